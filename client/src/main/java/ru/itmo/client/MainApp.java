@@ -15,12 +15,17 @@ import javafx.stage.Screen;
 import javafx.stage.Stage;
 import javafx.util.Duration;
 import ru.itmo.client.controller.*;
+import ru.itmo.client.network.ChangeListener;
 import ru.itmo.client.utility.runtime.Runner;
 import ru.itmo.client.utility.runtime.ServerConnection;
 import ru.itmo.general.models.Ticket;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
 import java.net.URL;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
@@ -30,8 +35,11 @@ public class MainApp extends Application {
     private Stage primaryStage;
     private BorderPane rootLayout;
     private Runner runner;
+    private ServerConnection connection;
     private ResourceBundle bundle;
     private DataVisualizationController dataVisualizationController;
+    private ChangeListener changeListener;
+    private boolean changeListenerOpened;
 
     private String currentScreen;
     private static final String LOGIN_SCREEN = "/view/LoginScreen.fxml";
@@ -56,13 +64,22 @@ public class MainApp extends Application {
         this.primaryStage.setWidth(bounds.getWidth());
         this.primaryStage.setHeight(bounds.getHeight());
 
-        ServerConnection connection = new ServerConnection("localhost", 4093); // Укажите хост и порт вашего сервера
+        String socketPath = System.getProperty("client.socket"); // Путь к Unix domain socket сервера на этом же хосте
+        connection = socketPath != null
+                ? new ServerConnection(Path.of(socketPath))
+                : new ServerConnection("localhost", 4093); // Укажите хост и порт вашего сервера
         runner = new Runner(connection);
         this.bundle = bundle;
         initRootLayout(bundle);
         showLoginScreen(bundle);
     }
 
+    @Override
+    public void stop() {
+        // Закрываем соединения с сервером, пока не завершилась JVM
+        if (connection != null) connection.close();
+    }
+
     public void setRunner(Runner runner) {
         this.runner = runner;
     }
@@ -163,6 +180,7 @@ public class MainApp extends Application {
             controller.setBundle(bundle);
             controller.setPrimaryStage(primaryStage);
             controller.fetchTickets();
+            controller.listenForChanges(getChangeListener());
             controller.setUserInfo();
             List<Ticket> tickets = controller.getTicketData();
             showDataVisualization();
@@ -176,6 +194,30 @@ public class MainApp extends Application {
         }
     }
 
+    /**
+     * Returns the listener of the change notices published by the server, joining their multicast group
+     * the first time. The group is set with {@code -Dclient.multicast.group} ("none" disables the notices),
+     * {@code -Dclient.multicast.port} and {@code -Dclient.multicast.interface}.
+     *
+     * @return the listener, or null if the notices are not received and the client has to poll the server
+     */
+    public ChangeListener getChangeListener() {
+        if (changeListenerOpened) return changeListener;
+        changeListenerOpened = true;
+        String group = System.getProperty("client.multicast.group", "239.255.40.93");
+        if (group.equalsIgnoreCase("none")) return null;
+        try {
+            String interfaceName = System.getProperty("client.multicast.interface");
+            NetworkInterface networkInterface = interfaceName == null ? null : NetworkInterface.getByName(interfaceName);
+            int port = Integer.getInteger("client.multicast.port", 4094);
+            changeListener = new ChangeListener(new InetSocketAddress(InetAddress.getByName(group), port),
+                    networkInterface);
+        } catch (IOException e) {
+            System.err.println("Change notices are not received: " + e.getMessage());
+        }
+        return changeListener;
+    }
+
     public boolean showTicketEditDialog(Ticket ticket) {
         try {
             FXMLLoader loader = new FXMLLoader();
@@ -20,16 +20,25 @@ import lombok.Getter;
 import lombok.Setter;
 import org.controlsfx.control.Notifications;
 import ru.itmo.client.MainApp;
+import ru.itmo.client.network.ChangeListener;
+import ru.itmo.client.utility.runtime.ChangeTracker;
 import ru.itmo.client.utility.runtime.Runner;
 import ru.itmo.general.models.Ticket;
 import ru.itmo.general.network.Response;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class MainController {
 
@@ -122,6 +131,9 @@ public class MainController {
     private Thread scriptThread;
     private Thread fetchThread;
     private boolean fetchThreadRunning = false;
+    private volatile ChangeListener changeListener;
+    private final AtomicBoolean syncScheduled = new AtomicBoolean();
+    private volatile boolean syncRequested;
 
     public void setMainApp(MainApp mainApp) {
         this.mainApp = mainApp;
@@ -173,13 +185,20 @@ public class MainController {
         startBackgroundUpdateThread();
     }
 
+    /**
+     * Запускает поток, который раз в 10 секунд загружает изменения коллекции,
+     * если уведомления об изменениях от сервера не доходят.
+     */
     private void startBackgroundUpdateThread() {
         Task<Void> task = new Task<>() {
             @Override
             protected Void call() throws Exception {
                 while (true) {
                     TimeUnit.SECONDS.sleep(10);
-                    Platform.runLater(() -> handleFilter());
+                    ChangeListener listener = changeListener;
+                    if (listener == null || listener.isStale()) {
+                        requestSync();
+                    }
                 }
             }
         };
@@ -189,6 +208,77 @@ public class MainController {
         backgroundThread.start();
     }
 
+    /**
+     * Подписывается на уведомления об изменениях коллекции: получив уведомление об изменении,
+     * которого клиент еще не видел, контроллер загружает только измененные билеты.
+     *
+     * @param listener слушатель уведомлений, или null, если уведомления недоступны
+     */
+    public void listenForChanges(ChangeListener listener) {
+        changeListener = listener;
+        if (listener != null) {
+            listener.setConsumer(batch -> {
+                if (runner.isBehind(batch)) requestSync();
+            });
+        }
+    }
+
+    /**
+     * Загружает изменения в фоновом потоке. Запросы, пришедшие во время загрузки, объединяются в одну следующую.
+     */
+    private void requestSync() {
+        syncRequested = true;
+        if (!syncScheduled.compareAndSet(false, true)) return;
+        Thread syncThread = new Thread(this::syncChanges, "change-sync");
+        syncThread.setDaemon(true);
+        syncThread.start();
+    }
+
+    private void syncChanges() {
+        do {
+            try {
+                while (syncRequested) {
+                    syncRequested = false;
+                    ChangeTracker.Delta delta = runner.fetchChanges();
+                    if (delta == null) continue;
+                    if (!delta.complete()) {
+                        Platform.runLater(this::handleFilter);
+                    } else if (!delta.isEmpty()) {
+                        Platform.runLater(() -> applyChanges(delta));
+                    }
+                }
+            } finally {
+                syncScheduled.set(false);
+            }
+            // Запрос мог прийти после проверки, пока поток еще считался запущенным
+        } while (syncRequested && syncScheduled.compareAndSet(false, true));
+    }
+
+    /**
+     * Применяет загруженные изменения к таблице, не загружая коллекцию целиком.
+     */
+    private void applyChanges(ChangeTracker.Delta delta) {
+        boolean onlyOwn = filterCheckBox.isSelected();
+        Integer userId = runner.getCurrentUserId();
+        Map<Integer, Ticket> changed = delta.tickets().stream()
+                .collect(Collectors.toMap(Ticket::getId, Function.identity(), (first, second) -> second));
+        Set<Integer> removed = new HashSet<>(delta.removedIds());
+        List<Ticket> tickets = new ArrayList<>(ticketData.size() + changed.size());
+        for (Ticket ticket : ticketData) {
+            int id = ticket.getId();
+            if (removed.contains(id) || changed.containsKey(id)) continue;
+            tickets.add(ticket);
+        }
+        for (Ticket ticket : changed.values()) {
+            if (!onlyOwn || Objects.equals(ticket.getUserId(), userId)) {
+                tickets.add(ticket);
+            }
+        }
+        setRouteData(tickets);
+        dataTable.refresh();
+        dataTable.sort();
+    }
+
     private void handleFilter() {
         if (filterCheckBox.isSelected()) {
             fetchUserTickets();
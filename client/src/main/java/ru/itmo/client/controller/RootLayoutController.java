@@ -1,5 +1,6 @@
 package ru.itmo.client.controller;
 
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.MenuItem;
 import ru.itmo.client.MainApp;
@@ -45,7 +46,8 @@ public class RootLayoutController {
 
     @FXML
     private void handleExit() {
-        System.exit(0);
+        // Platform.exit() вызывает MainApp.stop(), который закрывает соединения с сервером
+        Platform.exit();
     }
 
     @FXML
@@ -0,0 +1,126 @@
+package ru.itmo.client.network;
+
+import ru.itmo.general.network.ChangeNotice;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Receives the notices of the changes of the collection published by the server on a UDP multicast group.
+ * Every received datagram is passed to a consumer on the thread of the listener.
+ * The server sends a datagram at least every {@link ChangeNotice#HEARTBEAT_MILLIS}, so a listener that has
+ * heard nothing for much longer is {@linkplain #isStale() stale}: the server does not reach it.
+ *
+ * @author zevtos
+ */
+public class ChangeListener implements Closeable {
+    private static final long STALE_NANOS = TimeUnit.MILLISECONDS.toNanos(3 * ChangeNotice.HEARTBEAT_MILLIS);
+    private final DatagramChannel channel;
+    private final MembershipKey membership;
+    private volatile Consumer<ChangeNotice.Batch> consumer;
+    private volatile long lastHeard = System.nanoTime();
+
+    /**
+     * Joins a multicast group and starts listening to it.
+     *
+     * @param group            the address and port of the group
+     * @param networkInterface the interface to join the group on, or null to choose one
+     * @throws IOException if the group cannot be joined
+     */
+    public ChangeListener(InetSocketAddress group, NetworkInterface networkInterface) throws IOException {
+        NetworkInterface joinOn = networkInterface != null ? networkInterface : defaultInterface();
+        if (joinOn == null) {
+            throw new SocketException("No network interface supports multicast");
+        }
+        this.channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(group.getPort()));
+            this.membership = channel.join(group.getAddress(), joinOn);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        Thread thread = new Thread(this::listen, "change-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Sets the consumer of the received datagrams.
+     *
+     * @param consumer the consumer, or null to ignore the datagrams
+     */
+    public void setConsumer(Consumer<ChangeNotice.Batch> consumer) {
+        this.consumer = consumer;
+    }
+
+    /**
+     * Checks whether nothing has been heard from the server for much longer than the interval of its heartbeats.
+     *
+     * @return true if the server does not reach the listener
+     */
+    public boolean isStale() {
+        return !channel.isOpen() || System.nanoTime() - lastHeard > STALE_NANOS;
+    }
+
+    private void listen() {
+        ByteBuffer buffer = ByteBuffer.allocate(ChangeNotice.MAX_DATAGRAM_SIZE);
+        try {
+            while (true) {
+                buffer.clear();
+                channel.receive(buffer);
+                buffer.flip();
+                ChangeNotice.Batch batch = ChangeNotice.read(buffer);
+                if (batch == null) continue;
+                lastHeard = System.nanoTime();
+                Consumer<ChangeNotice.Batch> current = consumer;
+                if (current != null) {
+                    current.accept(batch);
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // Слушатель закрыт
+        } catch (IOException e) {
+            System.err.println("Change notices are not received any more: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Chooses the interface to join the group on: the first one which is up and supports multicast,
+     * preferring the ones connected to a network over the loopback.
+     */
+    private static NetworkInterface defaultInterface() throws SocketException {
+        NetworkInterface loopback = null;
+        for (NetworkInterface candidate : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            if (!candidate.isUp() || !candidate.supportsMulticast()) continue;
+            boolean hasIPv4 = candidate.inetAddresses().anyMatch(address -> address.getAddress().length == 4);
+            if (!hasIPv4) continue;
+            if (!candidate.isLoopback()) return candidate;
+            loopback = candidate;
+        }
+        return loopback != null ? loopback : NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Leaves the group and stops listening.
+     */
+    @Override
+    public void close() throws IOException {
+        membership.drop();
+        channel.close();
+    }
+}
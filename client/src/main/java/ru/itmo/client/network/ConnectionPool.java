@@ -0,0 +1,166 @@
+package ru.itmo.client.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * A small pool of connections to the server, so that operations run at the same time do not wait for each other:
+ * the server executes the requests of one connection in order, and a long download would hold up a quick edit
+ * sent after it. Connections are opened when needed, up to the size of the pool, and checked out for one operation
+ * at a time. A connection is checked before it is handed out and reconnected if the server has closed it.
+ * The session token is not tied to a connection, so the user logs in once for all of them.
+ *
+ * @author zevtos
+ */
+public class ConnectionPool implements Closeable {
+    /**
+     * Largest number of connections, unless {@code -Dclient.pool.size} is given.
+     */
+    public static final int DEFAULT_SIZE = Integer.getInteger("client.pool.size", 4);
+    /**
+     * How long an operation waits for a connection when all of them are checked out.
+     */
+    private static final long CHECKOUT_TIMEOUT_MILLIS = 10000;
+    private final Supplier<TCPClient> factory;
+    private final int maxSize;
+    /**
+     * Connections not checked out; the most recently returned one is handed out first.
+     */
+    private final Deque<TCPClient> idle = new ArrayDeque<>();
+    private final List<TCPClient> all = new ArrayList<>();
+    private int opening;
+    private boolean closed;
+
+    /**
+     * Constructs a pool of up to {@link #DEFAULT_SIZE} connections.
+     *
+     * @param factory creates the client of a new connection
+     */
+    public ConnectionPool(Supplier<TCPClient> factory) {
+        this(factory, DEFAULT_SIZE);
+    }
+
+    /**
+     * Constructs a pool.
+     *
+     * @param factory creates the client of a new connection
+     * @param maxSize the largest number of connections
+     */
+    public ConnectionPool(Supplier<TCPClient> factory, int maxSize) {
+        if (maxSize < 1) throw new IllegalArgumentException("The pool needs at least one connection");
+        this.factory = factory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Checks out a connection, opening a new one if all are busy and the pool is not full,
+     * and waiting for one to be returned otherwise.
+     *
+     * @return the connection, which must be {@linkplain #release returned} after use
+     * @throws IOException if no connection could be obtained
+     */
+    public TCPClient acquire() throws IOException {
+        TCPClient client = null;
+        long deadline = System.currentTimeMillis() + CHECKOUT_TIMEOUT_MILLIS;
+        synchronized (this) {
+            while (client == null) {
+                if (closed) throw new IOException("Пул соединений закрыт");
+                client = idle.pollFirst();
+                if (client != null) break;
+                if (all.size() + opening < maxSize) {
+                    opening++;
+                    break;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) throw new IOException("Все соединения с сервером заняты");
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Ожидание соединения прервано");
+                }
+            }
+        }
+        return client != null ? checkHealth(client) : open();
+    }
+
+    /**
+     * Returns a connection to the pool.
+     *
+     * @param client a connection obtained from {@link #acquire}
+     */
+    public synchronized void release(TCPClient client) {
+        if (closed) {
+            all.remove(client);
+            client.close();
+            return;
+        }
+        idle.addFirst(client);
+        notify();
+    }
+
+    /**
+     * Opens a new connection in place of the one reserved by {@link #acquire}.
+     */
+    private TCPClient open() throws IOException {
+        TCPClient client = factory.get();
+        boolean connected = false;
+        try {
+            connected = client.connect();
+        } catch (TimeoutException e) {
+            throw new IOException(e.getMessage());
+        } finally {
+            synchronized (this) {
+                opening--;
+                if (connected) {
+                    all.add(client);
+                } else {
+                    notify();
+                }
+            }
+            if (!connected) client.close();
+        }
+        if (!connected) throw new IOException("Не удалось подключиться к серверу");
+        return client;
+    }
+
+    /**
+     * Reconnects a connection the server has closed, e.g. after it was idle for too long or restarted.
+     */
+    private TCPClient checkHealth(TCPClient client) throws IOException {
+        if (client.isConnected() || client.ensureConnection() && client.isConnected()) {
+            return client;
+        }
+        release(client);
+        throw new IOException("Не удалось подключиться к серверу");
+    }
+
+    /**
+     * Returns the number of open connections.
+     *
+     * @return the number of connections, checked out or not
+     */
+    public synchronized int size() {
+        return all.size();
+    }
+
+    /**
+     * Closes the connections not checked out; the others are closed when they are returned.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (TCPClient client : idle) {
+            all.remove(client);
+            client.close();
+        }
+        idle.clear();
+        notifyAll();
+    }
+}
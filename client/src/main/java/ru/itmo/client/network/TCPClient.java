@@ -1,60 +1,184 @@
 package ru.itmo.client.network;
 
+import ru.itmo.general.commands.core.Batch;
+import ru.itmo.general.managers.CommandManager;
+import ru.itmo.general.network.FrameDecoder;
+import ru.itmo.general.network.FrameEncoder;
+import ru.itmo.general.network.Heartbeat;
 import ru.itmo.general.network.Request;
 import ru.itmo.general.network.Response;
+import ru.itmo.general.network.SnapshotFrame;
+import ru.itmo.general.network.Handshake;
+import ru.itmo.general.network.codec.Codec;
+import ru.itmo.general.network.codec.Compression;
+import ru.itmo.general.network.codec.PayloadCompressor;
+import ru.itmo.general.network.shm.SharedMemoryFile;
+import ru.itmo.general.network.shm.SharedMemoryHandshake;
+import ru.itmo.general.network.shm.SharedMemoryRing;
 import ru.itmo.general.utility.MessageOutput;
 
-import java.io.*;
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Iterator;
-import java.util.Set;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
+/**
+ * Client of the server. Requests are written by the threads sending them; everything the server sends is read
+ * by one I/O thread per client, which waits on a selector kept for the whole life of the client and completes
+ * the future of each request when its response arrives. Any number of threads may therefore share one connection.
+ * The futures are completed on the I/O thread, so the actions chained to them must not block.
+ *
+ * @author zevtos
+ */
 public class TCPClient {
+    /**
+     * Wire format of the requests, {@code binary} unless {@code -Dclient.codec=serialization} is given.
+     */
+    private static final Codec codec = Codec.byName(System.getProperty("client.codec"), Codec.BINARY);
+    /**
+     * Codecs offered in the handshake: only the configured one if {@code client.codec} is given, any otherwise.
+     */
+    private static final int OFFERED_CODECS = System.getProperty("client.codec") != null
+            ? 1 << codec.ordinal() : (1 << Codec.values().length) - 1;
+    /**
+     * Whether the client offers compression of large responses, unless {@code -Dclient.compression=false} is given.
+     */
+    private static final boolean COMPRESSION_ENABLED = Boolean.parseBoolean(System.getProperty("client.compression", "true"));
+    private static final int BUSY_RETRIES = 3;
+    /**
+     * How many times a request whose connection was lost is sent again over a new connection,
+     * unless {@code -Dclient.reconnect.attempts} is given.
+     */
+    private static final int RECONNECT_ATTEMPTS = Integer.getInteger("client.reconnect.attempts", 6);
+    private static final long RECONNECT_BASE_DELAY_MILLIS = 250;
+    private static final long RECONNECT_MAX_DELAY_MILLIS = 8000;
+    /**
+     * How long the client waits for a response; also sent with every request, so the server can drop it afterwards.
+     */
+    private static final long RESPONSE_TIMEOUT_MILLIS = 10000;
+    /**
+     * How long the client waits for the welcome of the server; a server that predates the handshake never sends it.
+     */
+    private static final long HANDSHAKE_TIMEOUT_MILLIS = 3000;
+    /**
+     * How often the response ring is looked at while no request waits for a response, e.g. for heartbeats.
+     */
+    private static final long RING_POLL_MILLIS = 50;
     private final MessageOutput output;
     private final String serverAddress;
     private final int serverPort;
-    private SocketChannel socketChannel;
+    /**
+     * Path of the Unix domain socket of a server running on the same host, or null to connect over TCP.
+     */
+    private final Path socketPath;
+    private final FrameDecoder frameDecoder = new FrameDecoder();
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(16384);
+    private final AtomicLong nextRequestId = new AtomicLong();
+    private final Map<Long, CompletableFuture<Response>> pendingResponses = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    /**
+     * Channel of a new connection, waiting to be registered with the selector by the I/O thread.
+     */
+    private final AtomicReference<SocketChannel> registration = new AtomicReference<>();
+    private Selector selector;
+    private volatile SocketChannel socketChannel;
+    private PayloadCompressor decompressor;
+    /**
+     * Shared memory the frames go through instead of the socket, once the server has accepted it.
+     */
+    private volatile SharedMemoryFile sharedMemory;
+    private volatile CompletableFuture<Boolean> sharedMemoryAnswer;
+    /**
+     * Options negotiated with the server, or null if the server did not answer the handshake.
+     */
+    private volatile Handshake.Welcome welcome;
+    private volatile CompletableFuture<Handshake.Welcome> welcomeAnswer;
+    private volatile Codec requestCodec = codec;
+    private volatile boolean closed;
 
     public TCPClient(String serverAddress, int serverPort, MessageOutput output) {
         this.serverAddress = serverAddress;
         this.serverPort = serverPort;
+        this.socketPath = null;
         this.output = output;
     }
 
-    public boolean connect() throws TimeoutException {
-        Selector selector = null;
+    /**
+     * Creates a client of a server running on the same host, connecting through its Unix domain socket
+     * instead of the loopback interface.
+     *
+     * @param socketPath path of the socket the server listens on ({@code -Dserver.socket.path})
+     * @param output     where connection messages are printed
+     */
+    public TCPClient(Path socketPath, MessageOutput output) {
+        this.serverAddress = null;
+        this.serverPort = 0;
+        this.socketPath = socketPath;
+        this.output = output;
+    }
+
+    public synchronized boolean connect() throws TimeoutException {
+        if (closed) return false;
+        Selector connectSelector = null;
+        SocketChannel channel = null;
         boolean connect_flag = false;
         try {
-            socketChannel = SocketChannel.open();
-            socketChannel.configureBlocking(false);
-            InetSocketAddress address = new InetSocketAddress(serverAddress, serverPort);
-            socketChannel.connect(address);
+            startIoThread();
+            detachSharedMemory();
+            channel = socketPath != null ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+            channel.configureBlocking(false);
+            failPending(new IOException("Соединение переустановлено"));
+            SocketAddress address = socketPath != null
+                    ? UnixDomainSocketAddress.of(socketPath)
+                    : new InetSocketAddress(serverAddress, serverPort);
+            if (channel.connect(address)) {
+                // Соединение через Unix domain socket обычно устанавливается сразу
+                connect_flag = true;
+                onConnected(channel);
+                return true;
+            }
 
-            selector = Selector.open();
-            socketChannel.register(selector, SelectionKey.OP_CONNECT);
+            connectSelector = Selector.open();
+            channel.register(connectSelector, SelectionKey.OP_CONNECT);
 
             long startTime = System.currentTimeMillis();
             while (System.currentTimeMillis() - startTime < 10000) {
-                if (selector.select(1000) == 0) {
+                if (connectSelector.select(1000) == 0) {
                     continue;
                 }
 
-                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                Iterator<SelectionKey> keys = connectSelector.selectedKeys().iterator();
                 while (keys.hasNext()) {
                     SelectionKey key = keys.next();
                     keys.remove();
                     if (key.isConnectable()) {
                         try {
-                            connect_flag = socketChannel.finishConnect();
+                            connect_flag = channel.finishConnect();
                         } catch (IOException ignored) {
                         }
                         if (connect_flag) {
-                            output.println("Подключено к серверу: " + serverAddress + ":" + serverPort);
+                            onConnected(channel);
                             return true;
                         }
                     }
@@ -67,26 +191,85 @@ public class TCPClient {
         } finally {
             if (!connect_flag) {
                 try {
-                    if (socketChannel != null) {
-                        socketChannel.close();
-                    }
-                    if (selector != null) {
-                        selector.close();
+                    if (channel != null) {
+                        channel.close();
                     }
                 } catch (IOException e) {
                     output.println("Ошибка при закрытии ресурсов: " + e.getMessage());
                 }
             }
+            if (connectSelector != null) {
+                try {
+                    connectSelector.close();
+                } catch (IOException e) {
+                    output.println("Ошибка при закрытии ресурсов: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens the selector and starts the I/O thread, once per client.
+     */
+    private void startIoThread() throws IOException {
+        if (selector != null) return;
+        selector = Selector.open();
+        Thread ioThread = new Thread(this::runIo, "tcp-client-io");
+        ioThread.setDaemon(true);
+        ioThread.start();
+    }
+
+    private void onConnected(SocketChannel channel) throws IOException {
+        socketChannel = channel;
+        registration.set(channel);
+        selector.wakeup();
+        output.println("Подключено к серверу: " + (socketPath != null ? socketPath : serverAddress + ":" + serverPort));
+        negotiate();
+    }
+
+    /**
+     * Sends the hello frame and waits for the welcome of the server, which sets the codec of the requests
+     * and the limits of the connection. A server that predates the handshake does not answer it; then the
+     * configured codec is used and compression is offered with an offer frame, as before the handshake.
+     */
+    private void negotiate() throws IOException {
+        int[] compressions = COMPRESSION_ENABLED ? Compression.supported() : new int[0];
+        Handshake.Hello hello = new Handshake.Hello(Handshake.PROTOCOL_VERSION,
+                Handshake.SNAPSHOT_FRAMES | Handshake.SHARED_MEMORY | Handshake.HEARTBEATS, OFFERED_CODECS,
+                FrameDecoder.DEFAULT_MAX_FRAME_SIZE, compressions);
+        CompletableFuture<Handshake.Welcome> answer = new CompletableFuture<>();
+        welcome = null;
+        welcomeAnswer = answer;
+        writeFrame(FrameEncoder.encode(hello.toPayload()));
+        Handshake.Welcome negotiated = await(answer, HANDSHAKE_TIMEOUT_MILLIS);
+        welcomeAnswer = null;
+        if (negotiated != null) {
+            welcome = negotiated;
+            requestCodec = negotiated.codec();
+            return;
+        }
+        requestCodec = codec;
+        if (COMPRESSION_ENABLED && isConnected()) {
+            writeFrame(FrameEncoder.encode(Compression.offer()));
         }
     }
 
+    /**
+     * Returns how many requests may be in flight on the connection at once, as announced by the server.
+     *
+     * @return the depth of the pipeline, or {@link Integer#MAX_VALUE} if the server did not announce it
+     */
+    public int getPipelineDepth() {
+        Handshake.Welcome negotiated = welcome;
+        return negotiated != null ? Math.max(1, negotiated.pipelineDepth()) : Integer.MAX_VALUE;
+    }
 
-    public boolean ensureConnection() {
+    public synchronized boolean ensureConnection() {
         if (!isConnected()) {
             output.println("Нет подключения к серверу.");
             try {
                 output.println("Попытка повторного подключения к серверу...");
-                connect();
+                return connect();
             } catch (TimeoutException e) {
                 output.printError("Ошибка переподключения: " + e.getMessage());
                 return false;
@@ -96,89 +279,452 @@ public class TCPClient {
     }
 
     public void disconnect() throws IOException {
-        if (socketChannel != null) {
-            socketChannel.close();
-        }
-    }
-
-    public void sendRequest(Request request) throws IOException {
-        if (!ensureConnection()) throw new IOException();
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream);
-        objectOutputStream.writeObject(request);
-        objectOutputStream.flush();
-        byte[] requestBytes = byteArrayOutputStream.toByteArray();
-        ByteBuffer buffer = ByteBuffer.wrap(requestBytes);
-        socketChannel.write(buffer);
-    }
-
-    public Response receiveResponse() throws IOException, ClassNotFoundException {
-        ensureConnection();
-        Selector selector = Selector.open();
-        socketChannel.configureBlocking(false);
-        socketChannel.register(selector, SelectionKey.OP_READ);
-        ByteBuffer buffer = ByteBuffer.allocate(16384);
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        long startTime = System.currentTimeMillis();
-
-        while (System.currentTimeMillis() - startTime < 10000) { // Ожидаем ответ не больше 10 секунд
-            int readyChannels = selector.select(10000); // Ожидаем события не больше 10 секунд
-            if (readyChannels == 0) {
-                continue;
-            }
-
-            Set<SelectionKey> selectedKeys = selector.selectedKeys();
-            Iterator<SelectionKey> keyIterator = selectedKeys.iterator();
-
-            while (keyIterator.hasNext()) {
-                SelectionKey key = keyIterator.next();
-                if (key.isReadable()) {
-                    int bytesRead;
-                    while ((bytesRead = socketChannel.read(buffer)) > 0) {
-                        buffer.flip();
-                        byteArrayOutputStream.write(buffer.array(), 0, bytesRead);
-                        buffer.clear();
-                    }
-                    if (bytesRead == -1) {
-                        // Закрытие канала
-                        socketChannel.close();
-                    }
+        SocketChannel channel = socketChannel;
+        if (channel != null) {
+            channel.close();
+        }
+        detachSharedMemory();
+        failPending(new IOException("Соединение закрыто"));
+    }
+
+    /**
+     * Disconnects from the server for good and stops the I/O thread; the client cannot be used any more.
+     */
+    public void close() {
+        closed = true;
+        try {
+            disconnect();
+        } catch (IOException e) {
+            output.printError("Не удалось закрыть соединение");
+        }
+        synchronized (this) {
+            if (selector != null) {
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                    // Поток ввода-вывода всё равно завершится
                 }
-                keyIterator.remove();
             }
+        }
+    }
 
-            byte[] responseBytes = byteArrayOutputStream.toByteArray();
-            if (responseBytes.length > 0) {
-                try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(responseBytes))) {
-                    return (Response) objectInputStream.readObject();
-                } catch (Exception ignore) {
-                }
+    /**
+     * Moves the connection to a server on the same host to shared memory: requests and responses are exchanged
+     * through ring buffers in a memory-mapped file instead of the socket, which stays open to tell both sides
+     * that the other one is alive. After a reconnection the client uses the socket again until this is called anew.
+     *
+     * @param file         path of the file to create; it is deleted when the client disconnects
+     * @param ringCapacity size of each of the two rings, in bytes
+     * @return true if the server accepted the file, false if the socket keeps being used
+     * @throws IOException if the file cannot be created or the server cannot be reached
+     */
+    public boolean attachSharedMemory(Path file, int ringCapacity) throws IOException {
+        if (!ensureConnection()) throw new IOException("Нет подключения к серверу");
+        Handshake.Welcome negotiated = welcome;
+        if (negotiated != null && !negotiated.has(Handshake.SHARED_MEMORY)) return false;
+        SharedMemoryFile created = SharedMemoryFile.create(file, ringCapacity);
+        created.getPath().toFile().deleteOnExit();
+        CompletableFuture<Boolean> answer = new CompletableFuture<>();
+        sharedMemoryAnswer = answer;
+        writeFrame(FrameEncoder.encode(SharedMemoryHandshake.attach(file)));
+        boolean accepted = Boolean.TRUE.equals(await(answer, RESPONSE_TIMEOUT_MILLIS));
+        sharedMemoryAnswer = null;
+        if (accepted) {
+            sharedMemory = created;
+            selector.wakeup();
+            return true;
+        }
+        Files.deleteIfExists(file);
+        return false;
+    }
+
+    private void detachSharedMemory() {
+        SharedMemoryFile memory = sharedMemory;
+        sharedMemory = null;
+        if (memory != null) {
+            try {
+                Files.deleteIfExists(memory.getPath());
+            } catch (IOException e) {
+                output.printError("Не удалось удалить файл разделяемой памяти: " + e.getMessage());
             }
         }
+    }
 
-        // Если за 10 секунд не получили ответ, возвращаем null или генерируем исключение
-        return null;
+    /**
+     * Sends a request without waiting for its response.
+     * The request gets a fresh identifier, so any number of requests may be in flight on the connection at once;
+     * the returned future is completed by the I/O thread when a response with the same identifier arrives.
+     * Unless the request already has a timeout, it is sent with the time {@link #awaitResponse} waits for it.
+     * A request of a command changing the collection, alone or in a batch, gets an idempotency key,
+     * kept if the request is sent again.
+     *
+     * @param request the request to send
+     * @return future of the response to this request
+     * @throws IOException if the request could not be written or is larger than the frames the server accepts
+     */
+    public CompletableFuture<Response> sendRequest(Request request) throws IOException {
+        if (!ensureConnection()) throw new IOException("Нет подключения к серверу");
+        assignIdempotencyKey(request);
+        List<Request> batched = Batch.requestsOf(request);
+        if (batched != null) batched.forEach(TCPClient::assignIdempotencyKey);
+        long requestId = nextRequestId.incrementAndGet();
+        request.setRequestId(requestId);
+        if (request.getTimeoutMillis() == 0) {
+            request.setTimeoutMillis(RESPONSE_TIMEOUT_MILLIS);
+        }
+        ByteBuffer buffer = FrameEncoder.encode(requestCodec.encode(request));
+        Handshake.Welcome negotiated = welcome;
+        if (negotiated != null && buffer.remaining() - FrameDecoder.HEADER_SIZE > negotiated.maxFrameSize()) {
+            throw new IOException("Запрос слишком велик для сервера");
+        }
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        // Ответ, которого перестали ждать, не должен занимать место среди ожидаемых
+        future.whenComplete((response, failure) -> {
+            if (failure != null) pendingResponses.remove(requestId, future);
+        });
+        boolean wasIdle = pendingResponses.isEmpty();
+        pendingResponses.put(requestId, future);
+        SocketChannel channel = socketChannel;
+        try {
+            writeFrame(buffer);
+        } catch (IOException e) {
+            pendingResponses.remove(requestId);
+            // В соединение больше нельзя писать: следующий запрос пойдёт через новое
+            closedByServer(channel);
+            throw e;
+        }
+        if (wasIdle && sharedMemory != null) {
+            // Поток ввода-вывода мог заснуть на селекторе, а ответ придёт через кольцо
+            selector.wakeup();
+        }
+        return future;
     }
 
+    /**
+     * Sends a request and returns the future of its response, without blocking on the server.
+     * The future fails with a {@link TimeoutException} if the response does not arrive within 10 seconds.
+     * If the server rejects the request because it is overloaded, the request is retried a few times
+     * after the delay suggested by the server. If the connection is lost, the request is sent again over
+     * a new connection after a growing random delay; the server applies a replayed request changing
+     * the collection only once, by its idempotency key.
+     *
+     * @param request the request to send
+     * @return future of the response
+     */
+    public CompletableFuture<Response> sendAsync(Request request) {
+        return sendRetryingBusy(request, 0);
+    }
 
-    public Response sendCommand(Request request) {
+    private CompletableFuture<Response> sendRetryingBusy(Request request, int attempt) {
+        return sendReconnecting(request, 0).thenCompose(response -> {
+            if (attempt >= BUSY_RETRIES || !isServerBusy(response)) {
+                return CompletableFuture.completedFuture(response);
+            }
+            long delay = response.getData() instanceof Integer retryAfter ? retryAfter : 100;
+            return later(delay, () -> sendRetryingBusy(request, attempt + 1));
+        });
+    }
+
+    private CompletableFuture<Response> sendReconnecting(Request request, int attempt) {
+        CompletableFuture<Response> future;
         try {
-            sendRequest(request);
-            return receiveResponse();
-        } catch (IOException | ClassNotFoundException ignored) {
-            output.printError(ignored.getMessage());
+            future = sendRequest(request);
+        } catch (IOException e) {
+            future = CompletableFuture.failedFuture(e);
         }
-        output.printError("Запрос не отправлен. Повторите попытку позже.");
+        return future.orTimeout(RESPONSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).exceptionallyCompose(failure -> {
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                    ? failure.getCause() : failure;
+            if (!(cause instanceof IOException) || closed || attempt >= RECONNECT_ATTEMPTS) {
+                return CompletableFuture.failedFuture(cause);
+            }
+            return later(reconnectDelay(attempt), () -> sendReconnecting(request, attempt + 1));
+        });
+    }
+
+    private static void assignIdempotencyKey(Request request) {
+        if (request.getIdempotencyKey() == null && CommandManager.isMutating(request.getCommand())) {
+            request.setIdempotencyKey(UUID.randomUUID().toString());
+        }
+    }
+
+    /**
+     * Chooses the delay before a reconnection at random, up to a limit doubling with every attempt,
+     * so that the clients of a restarted server do not all come back at the same moment.
+     */
+    private static long reconnectDelay(int attempt) {
+        long limit = Math.min(RECONNECT_MAX_DELAY_MILLIS, RECONNECT_BASE_DELAY_MILLIS << Math.min(attempt, 16));
+        return ThreadLocalRandom.current().nextLong(limit + 1);
+    }
+
+    /**
+     * Runs an action after a delay, off the I/O thread.
+     */
+    private static <T> CompletableFuture<T> later(long delayMillis, Supplier<CompletableFuture<T>> action) {
+        return CompletableFuture.runAsync(() -> {
+        }, CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS)).thenCompose(ignored -> action.get());
+    }
+
+    private void writeFrame(ByteBuffer frame) throws IOException {
+        synchronized (writeLock) {
+            SharedMemoryFile memory = sharedMemory;
+            if (memory != null) {
+                writeToRing(memory.requests(), frame);
+                return;
+            }
+            SocketChannel channel = socketChannel;
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+        }
+    }
+
+    private void writeToRing(SharedMemoryRing ring, ByteBuffer frame) throws IOException {
+        long deadline = System.currentTimeMillis() + RESPONSE_TIMEOUT_MILLIS;
+        for (int idleRounds = 0; frame.hasRemaining(); idleRounds++) {
+            if (ring.write(frame) > 0) {
+                idleRounds = 0;
+            } else if (System.currentTimeMillis() > deadline) {
+                throw new IOException("Сервер не читает запросы из разделяемой памяти");
+            } else {
+                SharedMemoryRing.idle(idleRounds);
+            }
+        }
+    }
+
+    /**
+     * Waits up to 10 seconds for the response of a previously sent request.
+     *
+     * @param future future returned by {@link #sendRequest}
+     * @return the response, or null if it did not arrive in time
+     * @throws IOException if the connection was lost before the response arrived
+     */
+    public Response awaitResponse(CompletableFuture<Response> future) throws IOException {
+        Response response = await(future, RESPONSE_TIMEOUT_MILLIS); // Ожидаем ответ не больше 10 секунд
+        if (response == null) {
+            future.completeExceptionally(new TimeoutException());
+        }
+        return response;
+    }
+
+    /**
+     * Waits for a future completed by the I/O thread.
+     *
+     * @return the value, or null if the future was not completed in time or the thread was interrupted
+     * @throws IOException if the future failed
+     */
+    private static <T> T await(CompletableFuture<T> future, long timeoutMillis) throws IOException {
         try {
-            disconnect();
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException cause ? cause : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Loop of the I/O thread. While a request waits for its response over shared memory, the response ring
+     * is polled, and the socket is checked now and then so that a server gone away is noticed; otherwise
+     * the thread sleeps on the selector until the socket has data.
+     */
+    private void runIo() {
+        int idleRounds = 0;
+        while (!closed) {
+            try {
+                SocketChannel channel = registration.getAndSet(null);
+                if (channel != null) {
+                    startReading(channel);
+                }
+                SharedMemoryFile memory = sharedMemory;
+                if (memory == null) {
+                    selector.select();
+                } else if (pendingResponses.isEmpty()) {
+                    selector.select(RING_POLL_MILLIS);
+                    readRing(memory.responses());
+                } else if (readRing(memory.responses())) {
+                    idleRounds = 0;
+                    continue;
+                } else if ((++idleRounds & 1023) == 1023) {
+                    selector.selectNow();
+                } else {
+                    SharedMemoryRing.idle(idleRounds);
+                    continue;
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isReadable()) {
+                        readSocket((SocketChannel) key.channel());
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                if (closed) return;
+                output.printError("Ошибка чтения ответа сервера: " + e.getMessage());
+                SocketChannel channel = socketChannel;
+                if (channel != null) {
+                    closedByServer(channel);
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers the channel of a new connection; what was left of the previous one is forgotten.
+     */
+    private void startReading(SocketChannel channel) throws IOException {
+        frameDecoder.reset();
+        if (decompressor != null) {
+            decompressor.close();
+            decompressor = null;
+        }
+        if (channel.isOpen()) {
+            channel.register(selector, SelectionKey.OP_READ);
+        }
+    }
+
+    private void readSocket(SocketChannel channel) throws IOException {
+        if (channel != socketChannel) {
+            // Канал прежнего соединения
+            channel.close();
+            return;
+        }
+        int bytesRead;
+        try {
+            while ((bytesRead = channel.read(readBuffer)) > 0) {
+                readBuffer.flip();
+                frameDecoder.feed(readBuffer);
+                readBuffer.clear();
+            }
         } catch (IOException e) {
-            output.printError("Не удалось закрыть соединение");
+            bytesRead = -1;
         }
+        handleFrames();
+        if (bytesRead == -1) {
+            closedByServer(channel);
+        }
+    }
+
+    /**
+     * Reads the frames available in the response ring.
+     *
+     * @return true if anything was read
+     */
+    private boolean readRing(SharedMemoryRing ring) throws IOException {
+        if (ring.read(readBuffer) == 0) return false;
+        readBuffer.flip();
+        frameDecoder.feed(readBuffer);
+        readBuffer.clear();
+        handleFrames();
+        return true;
+    }
+
+    private void handleFrames() throws IOException {
+        byte[] frame;
+        while ((frame = frameDecoder.poll()) != null) {
+            if (Heartbeat.isPing(frame)) {
+                writeFrame(FrameEncoder.encode(new byte[]{Heartbeat.PONG}));
+            } else if (Handshake.isWelcome(frame)) {
+                CompletableFuture<Handshake.Welcome> answer = welcomeAnswer;
+                if (answer != null) answer.complete(Handshake.Welcome.of(frame));
+            } else if (SharedMemoryHandshake.isAttached(frame)) {
+                CompletableFuture<Boolean> answer = sharedMemoryAnswer;
+                if (answer != null) answer.complete(SharedMemoryHandshake.isAccepted(frame));
+            } else {
+                dispatch(frame);
+            }
+        }
+    }
+
+    /**
+     * Closes a connection the server has closed, or that could not be read or written any more.
+     * Requests waiting for their responses fail, and the next request goes over a new connection.
+     */
+    private void closedByServer(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Соединение и так потеряно
+        }
+        if (channel != socketChannel) return;
+        detachSharedMemory();
+        failPending(new IOException("Соединение закрыто сервером"));
+    }
+
+    private void dispatch(byte[] responseBytes) throws IOException {
+        if (Compression.isCompressed(responseBytes)) {
+            responseBytes = Compression.decompress(responseBytes, decompressorFor(Compression.algorithmOf(responseBytes)));
+        }
+        Response response;
+        if (SnapshotFrame.isSnapshot(responseBytes)) {
+            byte[] encoded = SnapshotFrame.responseOf(responseBytes);
+            response = (Response) Codec.of(encoded).decode(encoded);
+            response.setRequestId(SnapshotFrame.requestIdOf(responseBytes));
+        } else {
+            response = (Response) Codec.of(responseBytes).decode(responseBytes);
+        }
+        CompletableFuture<Response> future = pendingResponses.remove(response.getRequestId());
+        if (future == null) {
+            output.printError("Получен ответ на неизвестный запрос: " + response.getMessage());
+            return;
+        }
+        future.complete(response);
+    }
+
+    private PayloadCompressor decompressorFor(int algorithm) {
+        if (decompressor == null || decompressor.id() != algorithm) {
+            if (decompressor != null) {
+                decompressor.close();
+            }
+            decompressor = Compression.create(algorithm);
+        }
+        return decompressor;
+    }
+
+    private void failPending(Throwable cause) {
+        for (Long requestId : pendingResponses.keySet()) {
+            CompletableFuture<Response> future = pendingResponses.remove(requestId);
+            if (future != null) future.completeExceptionally(cause);
+        }
+    }
+
+
+    /**
+     * Sends a request and waits for its response; a blocking form of {@link #sendAsync}.
+     * A request that failed does not affect the connection: it is only closed by the I/O thread or by a failed write,
+     * so the other requests in flight on it still get their responses.
+     *
+     * @param request the request to send
+     * @return the response, or a failed response if the request could not be completed
+     */
+    public Response sendCommand(Request request) {
+        try {
+            return sendAsync(request).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Response(false, "Команда не выполнена!", null);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                output.printError("Сервер не ответил на запрос вовремя.");
+            } else if (e.getCause() instanceof IOException cause) {
+                output.printError(cause.getMessage());
+            }
+        }
+        output.printError("Запрос не отправлен. Повторите попытку позже.");
         return new Response(false, "Команда не выполнена!", null);
     }
 
+    private static boolean isServerBusy(Response response) {
+        return !response.isSuccess() && Response.SERVER_BUSY.equals(response.getMessage());
+    }
+
     public boolean isConnected() {
-        return socketChannel != null && socketChannel.isConnected();
+        SocketChannel channel = socketChannel;
+        return channel != null && channel.isConnected();
     }
 
-}
\ No newline at end of file
+}
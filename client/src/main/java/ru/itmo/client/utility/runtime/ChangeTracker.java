@@ -0,0 +1,82 @@
+package ru.itmo.client.utility.runtime;
+
+import ru.itmo.general.models.Ticket;
+import ru.itmo.general.network.ChangeNotice;
+import ru.itmo.general.network.Response;
+
+import java.util.List;
+
+/**
+ * Remembers up to which change of the server the client has seen the collection
+ * and fetches the tickets changed since then with the {@code changes} command.
+ *
+ * @author zevtos
+ */
+public class ChangeTracker {
+    private final ServerConnection connection;
+    private long epoch = -1;
+    private long appliedSequence = -1;
+
+    /**
+     * Constructs a tracker which has not seen any change yet.
+     *
+     * @param connection the connection to the server
+     */
+    public ChangeTracker(ServerConnection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Checks whether the server has made changes the client has not seen.
+     *
+     * @param batch a datagram received from the server
+     * @return true if the changes have to be fetched
+     */
+    public synchronized boolean isBehind(ChangeNotice.Batch batch) {
+        return batch.epoch() != epoch || batch.lastSequence() > appliedSequence;
+    }
+
+    /**
+     * Fetches the tickets changed since the last fetch and marks the changes as seen.
+     *
+     * @return the changes, or null if the server did not answer
+     */
+    public synchronized Delta fetch() {
+        return fetch(appliedSequence);
+    }
+
+    /**
+     * Marks every change made so far as seen, without fetching anything.
+     * Must be called before the whole collection is downloaded, so that no change made meanwhile is missed.
+     */
+    public synchronized void rebase() {
+        fetch(Long.MAX_VALUE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Delta fetch(long sequence) {
+        Response response = connection.sendCommand("changes", sequence);
+        if (response == null || !response.isSuccess() || !(response.getData() instanceof Object[] data)) {
+            return null;
+        }
+        long serverEpoch = (Long) data[0];
+        boolean complete = (Boolean) data[2] && serverEpoch == epoch;
+        epoch = serverEpoch;
+        appliedSequence = (Long) data[1];
+        return new Delta(complete, (List<Ticket>) data[3], (List<Integer>) data[4]);
+    }
+
+    /**
+     * The changes fetched from the server.
+     *
+     * @param complete   false if the server no longer knows all the changes, and the whole collection has to be
+     *                   downloaded instead
+     * @param tickets    the current state of the changed tickets
+     * @param removedIds the IDs of the removed tickets
+     */
+    public record Delta(boolean complete, List<Ticket> tickets, List<Integer> removedIds) {
+        public boolean isEmpty() {
+            return tickets.isEmpty() && removedIds.isEmpty();
+        }
+    }
+}
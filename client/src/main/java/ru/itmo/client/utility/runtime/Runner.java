@@ -6,21 +6,27 @@ import ru.itmo.general.exceptions.ScriptRecursionException;
 import ru.itmo.general.managers.CommandManager;
 import ru.itmo.general.models.Ticket;
 import ru.itmo.general.models.forms.TicketForm;
+import ru.itmo.general.network.ChangeNotice;
 import ru.itmo.general.network.Request;
 import ru.itmo.general.network.Response;
-import ru.itmo.general.utility.Interrogator;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.*;
 
 /**
  * Запускает выполнение программы.
  */
 public class Runner {
+    /**
+     * Наибольшее число команд скрипта, отправленных без ответа, если не задано {@code -Dclient.script.window}.
+     */
+    private static final int SCRIPT_WINDOW = Integer.getInteger("client.script.window", 64);
     private final Set<String> scriptSet = new HashSet<>();
     private Request request;
     private ServerConnection connection;
+    private final ChangeTracker changeTracker;
 
     /**
      * Конструктор для Runner.
@@ -29,47 +35,37 @@ public class Runner {
      */
     public Runner(ServerConnection connection) {
         this.connection = connection;
+        this.changeTracker = new ChangeTracker(connection);
         createCommandManager();
     }
 
+    /**
+     * Выполняет скрипт. Команды читаются по мере отправки и уходят на сервер окном: следующие команды
+     * отправляются, не дожидаясь ответа на предыдущие, а сервер выполняет их по порядку.
+     * Выполнение останавливается на первой ошибке: сервер не выполняет команды скрипта, следующие за неудачной,
+     * хотя они уже отправлены; их число печатается в сводке. Для каждой команды печатается её статус,
+     * в конце — сводка по командам и скорость выполнения.
+     *
+     * @param file файл скрипта
+     * @return OK, если все команды скрипта выполнены успешно
+     */
     public ExitCode scriptMode(File file) {
         System.out.println("Script mode: " + file.getAbsolutePath());
-        String argument = file.getAbsolutePath();
-        scriptSet.add(argument);
         if (!file.exists()) {
             return ExitCode.ERROR;
         }
-        String[] userCommand;
-        try (Scanner scriptScanner = new Scanner(file)) {
+        ScriptStats stats = new ScriptStats();
+        try (ScriptReader reader = new ScriptReader(file, scriptSet)) {
             System.out.println("started successfully");
-            if (!scriptScanner.hasNext()) throw new NoSuchElementException();
-            Interrogator.setUserScanner(scriptScanner);
-            Interrogator.setFileMode();
-            do {
-                System.out.println("starting script");
-                userCommand = (scriptScanner.nextLine().trim() + " ").split(" ", 2);
-                userCommand[1] = userCommand[1].trim();
-                if (userCommand[0].equals("execute_script")) {
-                    if (scriptSet.contains(userCommand[1])) throw new ScriptRecursionException();
-                }
-                var command = CommandManager.getCommands().get(userCommand[0]);
-                if (command == null) {
-                    return ExitCode.ERROR;
-                }
-                var req = command.execute(userCommand);
-                if (!req.isSuccess()) return Runner.ExitCode.ERROR;
-                Response response = connection.sendCommand(req);
-                System.out.println(response.toString());
-                ExitCode commandStatus;
-                if (response.isSuccess()) {
-                    commandStatus = ExitCode.OK;
-                } else {
-                    commandStatus = ExitCode.ERROR;
-                }
-                if (commandStatus != ExitCode.OK) return commandStatus;
-            } while (scriptScanner.hasNextLine());
-
-        } catch (NoSuchElementException | IllegalStateException exception) {
+            if (!reader.hasNext() && reader.getError() == null) throw new NoSuchElementException();
+            connection.sendStreamed(reader, SCRIPT_WINDOW, stats::record);
+            stats.print();
+            if (reader.getError() != null) {
+                showError(reader.getError());
+                return ExitCode.ERROR;
+            }
+            return stats.failed == 0 ? ExitCode.OK : ExitCode.ERROR;
+        } catch (NoSuchElementException exception) {
             showError("Ошибка чтения из скрипта.");
             return ExitCode.ERROR;
         } catch (FileNotFoundException exception) {
@@ -78,10 +74,10 @@ public class Runner {
         } catch (ScriptRecursionException exception) {
             showError("Обнаружена рекурсия");
             return ExitCode.ERROR;
-        } finally {
-            scriptSet.remove(argument);
+        } catch (IOException exception) {
+            showError(exception.getMessage());
+            return ExitCode.ERROR;
         }
-        return ExitCode.OK;
     }
 
     /**
@@ -107,10 +103,30 @@ public class Runner {
     }
 
     public List<Ticket> fetchTickets() {
+        changeTracker.rebase();
         List<Ticket> tickets = connection.receiveTickets();
         return tickets;
     }
 
+    /**
+     * Загружает только билеты, измененные с прошлой загрузки.
+     *
+     * @return изменения, или null, если сервер не ответил
+     */
+    public ChangeTracker.Delta fetchChanges() {
+        return changeTracker.fetch();
+    }
+
+    /**
+     * Проверяет, есть ли на сервере изменения, которые клиент еще не загрузил.
+     *
+     * @param batch уведомление об изменениях, полученное от сервера
+     * @return true, если изменения нужно загрузить
+     */
+    public boolean isBehind(ChangeNotice.Batch batch) {
+        return changeTracker.isBehind(batch);
+    }
+
     public boolean addTicket(Ticket newTicket) {
         Response response = connection.sendCommand("add", newTicket);
 
@@ -180,6 +196,52 @@ public class Runner {
         ERROR_NULL_RESPONSE,
     }
 
+    /**
+     * Статусы команд скрипта и скорость их выполнения.
+     */
+    private static final class ScriptStats {
+        private final long startedAt = System.nanoTime();
+        /**
+         * Число успешных и неудачных выполнений каждой команды, в порядке первого появления.
+         */
+        private final Map<String, int[]> byCommand = new LinkedHashMap<>();
+        private int number;
+        private int failed;
+        /**
+         * Число команд, пропущенных сервером после первой ошибки: они были отправлены до того, как пришёл её ответ.
+         */
+        private int skipped;
+
+        /**
+         * Печатает статус очередной команды.
+         *
+         * @return true, если команда выполнена успешно и скрипт можно продолжать
+         */
+        boolean record(Request request, Response response) {
+            if (response != null && Response.STREAM_ABORTED.equals(response.getMessage())) {
+                skipped++;
+                return false;
+            }
+            number++;
+            boolean success = response != null && response.isSuccess();
+            byCommand.computeIfAbsent(request.getCommand(), command -> new int[2])[success ? 0 : 1]++;
+            if (!success) failed++;
+            System.out.println("[" + number + "] " + request.getCommand() + ": "
+                    + (response == null ? "нет ответа от сервера" : response));
+            return success;
+        }
+
+        void print() {
+            double seconds = Math.max(System.nanoTime() - startedAt, 1) / 1e9;
+            byCommand.forEach((command, counts) ->
+                    System.out.println(command + ": успешно " + counts[0] + ", с ошибкой " + counts[1]));
+            System.out.printf("Выполнено команд: %d за %.2f с (%.0f команд/с)%n", number, seconds, number / seconds);
+            if (skipped > 0) {
+                System.out.println("Пропущено после первой ошибки (отправлены до её ответа): " + skipped);
+            }
+        }
+    }
+
     private void showError(String message) {
         // Здесь можно добавить код для отображения предупреждения в GUI
         System.err.println(message); // Временно выводим в консоль
@@ -0,0 +1,151 @@
+package ru.itmo.client.utility.runtime;
+
+import lombok.Getter;
+import ru.itmo.general.exceptions.ScriptRecursionException;
+import ru.itmo.general.managers.CommandManager;
+import ru.itmo.general.network.Request;
+import ru.itmo.general.utility.Interrogator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.Set;
+
+/**
+ * Читает скрипт как поток запросов. Очередной запрос собирается, только когда его можно отправить,
+ * поэтому отправка начинается сразу, а скрипт не держится в памяти целиком.
+ * Команда execute_script раскрывается на месте: вложенный скрипт читается до конца, затем чтение
+ * продолжается со следующей строки. Скрипт, который уже открыт выше по цепочке, повторно не открывается.
+ * Чтение останавливается на первой строке, из которой не удалось собрать запрос; причина доступна в {@link #getError()}.
+ *
+ * @author zevtos
+ */
+class ScriptReader implements Iterator<Request>, Closeable {
+    private final Deque<Script> scripts = new ArrayDeque<>();
+    private final Set<String> scriptSet;
+    private final Scanner previousScanner = Interrogator.getUserScanner();
+    private final boolean previousFileMode = Interrogator.fileMode();
+    private Request next;
+    /**
+     * -- GETTER --
+     * Возвращает причину, по которой чтение остановилось раньше конца скрипта.
+     */
+    @Getter
+    private String error;
+
+    /**
+     * Открывает скрипт.
+     *
+     * @param file      файл скрипта
+     * @param scriptSet пути открытых скриптов, общие для всех вложенных вызовов
+     * @throws FileNotFoundException    если файл не найден
+     * @throws ScriptRecursionException если скрипт уже выполняется
+     */
+    ScriptReader(File file, Set<String> scriptSet) throws FileNotFoundException, ScriptRecursionException {
+        this.scriptSet = scriptSet;
+        open(file);
+        Interrogator.setFileMode();
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && error == null) {
+            next = read();
+        }
+        return next != null;
+    }
+
+    @Override
+    public Request next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        Request request = next;
+        next = null;
+        return request;
+    }
+
+    private Request read() {
+        try {
+            while (!scripts.isEmpty()) {
+                Scanner scanner = scripts.peek().scanner();
+                if (!scanner.hasNextLine()) {
+                    closeScript();
+                    continue;
+                }
+                String[] userCommand = (scanner.nextLine().trim() + " ").split(" ", 2);
+                userCommand[1] = userCommand[1].trim();
+                if (userCommand[0].isEmpty()) continue;
+                if (userCommand[0].equals("exit")) {
+                    // exit закрыл бы соединение посреди отправки, поэтому он только завершает скрипт
+                    while (!scripts.isEmpty()) closeScript();
+                    return null;
+                }
+                if (userCommand[0].equals("execute_script")) {
+                    if (userCommand[1].isEmpty()) {
+                        error = "Не указан файл скрипта";
+                        return null;
+                    }
+                    open(new File(userCommand[1]));
+                    continue;
+                }
+                var command = CommandManager.getCommands().get(userCommand[0]);
+                if (command == null) {
+                    error = "Команда '" + userCommand[0] + "' не найдена";
+                    return null;
+                }
+                Request request = command.execute(userCommand);
+                if (!request.isSuccess()) {
+                    error = userCommand[0] + ": " + request.getData();
+                    return null;
+                }
+                return request;
+            }
+        } catch (ScriptRecursionException exception) {
+            error = "Обнаружена рекурсия";
+        } catch (FileNotFoundException exception) {
+            error = "Файл не найден: " + exception.getMessage();
+        } catch (NoSuchElementException | IllegalStateException exception) {
+            error = "Ошибка чтения из скрипта.";
+        }
+        return null;
+    }
+
+    private void open(File file) throws FileNotFoundException, ScriptRecursionException {
+        String path = file.toPath().toAbsolutePath().normalize().toString();
+        if (!scriptSet.add(path)) throw new ScriptRecursionException();
+        Scanner scanner;
+        try {
+            scanner = new Scanner(file);
+        } catch (FileNotFoundException exception) {
+            scriptSet.remove(path);
+            throw exception;
+        }
+        scripts.push(new Script(path, scanner));
+        Interrogator.setUserScanner(scanner);
+    }
+
+    private void closeScript() {
+        Script script = scripts.pop();
+        script.scanner().close();
+        scriptSet.remove(script.path());
+        Interrogator.setUserScanner(scripts.isEmpty() ? previousScanner : scripts.peek().scanner());
+    }
+
+    /**
+     * Закрывает все открытые скрипты и возвращает прежний режим ввода.
+     */
+    @Override
+    public void close() {
+        while (!scripts.isEmpty()) {
+            closeScript();
+        }
+        if (!previousFileMode) Interrogator.setUserMode();
+    }
+
+    private record Script(String path, Scanner scanner) {
+    }
+}
@@ -2,18 +2,36 @@ package ru.itmo.client.utility.runtime;
 
 import lombok.Getter;
 import lombok.Setter;
+import ru.itmo.client.network.ConnectionPool;
 import ru.itmo.client.network.TCPClient;
-import ru.itmo.general.managers.CommandManager;
+import ru.itmo.general.commands.core.Batch;
 import ru.itmo.general.models.Ticket;
 import ru.itmo.general.network.Request;
 import ru.itmo.general.network.Response;
 import ru.itmo.general.utility.gui.GuiMessageOutput;
 
 import javax.swing.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
 
+/**
+ * Connection of the application to the server. Every operation checks out a connection of a small
+ * {@link ConnectionPool}, so that a long download does not hold up the operations started meanwhile;
+ * all connections share the session opened at login.
+ *
+ * @author zevtos
+ */
 public class ServerConnection {
-    private TCPClient tcpClient;
+    private final ConnectionPool pool;
+    private final AtomicLong nextStreamId = new AtomicLong();
     @Setter
     private String login;
     @Setter
@@ -21,9 +39,26 @@ public class ServerConnection {
     @Getter
     @Setter
     private Integer currentUserId;
+    private volatile String token;
 
     public ServerConnection(String host, int port) {
-        this.tcpClient = new TCPClient(host, port, new GuiMessageOutput(new JTextArea()));
+        this.pool = new ConnectionPool(() -> new TCPClient(host, port, new GuiMessageOutput(new JTextArea())));
+    }
+
+    /**
+     * Creates a connection to a server running on the same host, through its Unix domain socket.
+     *
+     * @param socketPath path of the socket the server listens on
+     */
+    public ServerConnection(Path socketPath) {
+        this.pool = new ConnectionPool(() -> new TCPClient(socketPath, new GuiMessageOutput(new JTextArea())));
+    }
+
+    /**
+     * Closes the connections of the pool; the application cannot reach the server any more.
+     */
+    public void close() {
+        pool.close();
     }
 
     public Response sendCommand(String[] userCommand) {
@@ -50,18 +85,18 @@ public class ServerConnection {
     }
 
     public Response sendCommand(Request request) {
-        if (request.getLogin() == null) {
-            request.setLogin(login);
-            request.setPassword(password);
-        } else {
-            login = request.getLogin();
-            password = request.getPassword();
-        }
+        attachCredentials(request);
         Response response = null;
+        TCPClient tcpClient = null;
         try {
-            response = tcpClient.sendCommand(request);
+            tcpClient = pool.acquire();
+            response = completeSession(tcpClient, request, tcpClient.sendCommand(request));
+        } catch (IOException e) {
+            response = new Response(false, e.getMessage());
         } catch (Exception e) {
             e.printStackTrace();
+        } finally {
+            if (tcpClient != null) pool.release(tcpClient);
         }
         if(request.getCommand().equals("login") || request.getCommand().equals("register")) {
             try {
@@ -72,9 +107,182 @@ public class ServerConnection {
         return response;
     }
 
+    /**
+     * Sends several requests over the connection without waiting for each response in turn.
+     * They all go over one connection, so the server executes them in the order they were sent;
+     * the responses are returned in the same order.
+     * No more requests are in flight at once than the depth of the pipeline negotiated with the server,
+     * so that they are not rejected as overload.
+     *
+     * @param requests the requests to send
+     * @return the responses, with null for a request whose response did not arrive
+     */
+    public List<Response> sendPipelined(List<Request> requests) {
+        List<CompletableFuture<Response>> futures = new ArrayList<>();
+        List<Response> responses = new ArrayList<>();
+        TCPClient tcpClient = null;
+        try {
+            tcpClient = pool.acquire();
+            int depth = tcpClient.getPipelineDepth();
+            for (Request request : requests) {
+                if (futures.size() - responses.size() >= depth) {
+                    int oldest = responses.size();
+                    responses.add(completeSession(tcpClient, requests.get(oldest),
+                            tcpClient.awaitResponse(futures.get(oldest))));
+                }
+                attachCredentials(request);
+                futures.add(tcpClient.sendRequest(request));
+            }
+            for (int i = responses.size(); i < futures.size(); i++) {
+                responses.add(completeSession(tcpClient, requests.get(i), tcpClient.awaitResponse(futures.get(i))));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (tcpClient != null) pool.release(tcpClient);
+        }
+        while (responses.size() < requests.size()) {
+            responses.add(null);
+        }
+        return responses;
+    }
+
+    /**
+     * Sends requests taken from a stream over one connection, keeping up to a window of them in flight,
+     * so that the next requests are on their way while the server executes the previous ones in order.
+     * A request is taken from the stream only when the window has room for it. Each response is passed
+     * to the listener as soon as it arrives, in the order of the requests; once the listener returns false,
+     * no more requests are sent, and the responses to the requests already sent are still passed to it.
+     * The requests are tagged with one stream id, so the server executes none of them after a failed one:
+     * the requests already in flight behind it are answered with {@link Response#STREAM_ABORTED}.
+     * Requests are not sent again after a lost connection, since their order would not be kept.
+     *
+     * @param requests the requests to send
+     * @param window   the largest number of requests in flight, capped by the depth of the pipeline negotiated
+     *                 with the server
+     * @param listener receives each request with its response, null if the response did not arrive,
+     *                 and returns false to stop sending
+     * @return the number of requests sent
+     * @throws IOException if no connection could be obtained
+     */
+    public int sendStreamed(Iterator<Request> requests, int window, BiPredicate<Request, Response> listener)
+            throws IOException {
+        Deque<Request> sent = new ArrayDeque<>();
+        Deque<CompletableFuture<Response>> futures = new ArrayDeque<>();
+        int count = 0;
+        boolean sending = true;
+        long streamId = nextStreamId.incrementAndGet();
+        TCPClient tcpClient = pool.acquire();
+        try {
+            int depth = Math.max(1, Math.min(window, tcpClient.getPipelineDepth()));
+            while (sending && requests.hasNext()) {
+                Request request = requests.next();
+                attachCredentials(request);
+                request.setStreamId(streamId);
+                try {
+                    // Не переподключаемся: запросы после потерянных выполнились бы без них
+                    if (!tcpClient.isConnected()) throw new IOException("Соединение с сервером потеряно");
+                    futures.add(tcpClient.sendRequest(request));
+                } catch (IOException e) {
+                    futures.add(CompletableFuture.failedFuture(e));
+                    sending = false;
+                }
+                sent.add(request);
+                count++;
+                if (futures.size() >= depth) {
+                    sending = deliverOldest(tcpClient, sent, futures, listener) && sending;
+                }
+            }
+            while (!futures.isEmpty()) {
+                deliverOldest(tcpClient, sent, futures, listener);
+            }
+        } finally {
+            pool.release(tcpClient);
+        }
+        return count;
+    }
+
+    private boolean deliverOldest(TCPClient tcpClient, Deque<Request> sent, Deque<CompletableFuture<Response>> futures,
+                                  BiPredicate<Request, Response> listener) {
+        Request request = sent.poll();
+        Response response;
+        try {
+            response = completeSession(tcpClient, request, tcpClient.awaitResponse(futures.poll()));
+        } catch (IOException e) {
+            response = null;
+        }
+        return listener.test(request, response);
+    }
+
+    /**
+     * Sends several requests in one frame, as a {@link Batch}, and receives all their responses in one frame,
+     * so that a bulk edit costs one round trip. The requests are authenticated by the batch.
+     * More than {@link Batch#MAX_SIZE} requests are sent as several batches, one after another.
+     *
+     * @param requests the requests to send
+     * @param parallel true if the requests do not depend on each other and the server may execute them in parallel;
+     *                 otherwise they are executed in order
+     * @return the responses, in the order of the requests; if the batch failed as a whole, each request gets
+     * the response of the batch, or null if no response arrived
+     */
+    public List<Response> sendBatch(List<Request> requests, boolean parallel) {
+        List<Response> responses = new ArrayList<>(requests.size());
+        for (int from = 0; from < requests.size(); from += Batch.MAX_SIZE) {
+            List<Request> part = requests.subList(from, Math.min(requests.size(), from + Batch.MAX_SIZE));
+            Response response = sendCommand(Batch.of(part, parallel));
+            if (response != null && response.isSuccess() && response.getData() instanceof List<?> batched
+                    && batched.size() == part.size()) {
+                for (Object element : batched) {
+                    responses.add((Response) element);
+                }
+                continue;
+            }
+            for (int i = 0; i < part.size(); i++) {
+                responses.add(response);
+            }
+        }
+        return responses;
+    }
+
+    /**
+     * Authenticates a request with the session token if one is open, and with the login and password otherwise.
+     * A request carrying its own credentials (login or register) replaces the stored ones and drops the session.
+     */
+    private void attachCredentials(Request request) {
+        if (request.getLogin() != null) {
+            login = request.getLogin();
+            password = request.getPassword();
+            token = null;
+        } else if (token != null) {
+            request.setToken(token);
+        } else {
+            request.setLogin(login);
+            request.setPassword(password);
+        }
+    }
+
+    /**
+     * Remembers the session token returned by the server. If the session of the request has expired,
+     * the request is sent once more with the login and password, which opens a new session.
+     */
+    private Response completeSession(TCPClient tcpClient, Request request, Response response) {
+        if (response != null && !response.isSuccess() && request.getToken() != null
+                && Response.SESSION_EXPIRED.equals(response.getMessage())) {
+            token = null;
+            request.setToken(null);
+            request.setLogin(login);
+            request.setPassword(password);
+            response = tcpClient.sendCommand(request);
+        }
+        if (response != null && response.getToken() != null) {
+            token = response.getToken();
+        }
+        return response;
+    }
+
     public List<Ticket> receiveTickets() {
         try {
-            Response response = sendCommand("show", null);
+            Response response = sendCommand("download_snapshot", null);
             return response != null ? ((List<Ticket>) response.getData()) : null;
         } catch (Exception e) {
             e.printStackTrace();
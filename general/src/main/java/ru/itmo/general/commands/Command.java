@@ -32,6 +32,26 @@ public abstract class Command implements Describable, Executable {
         return "Incorrect number of arguments!\nUsage: '" + getName() + getDescription() + "'";
     }
 
+    /**
+     * Checks whether the command only reads the collection in memory, never blocks and takes little time,
+     * so that the server may execute it right on the thread that has read the request.
+     *
+     * @return true if the command may be executed inline
+     */
+    public boolean isInline() {
+        return false;
+    }
+
+    /**
+     * Checks whether the command changes the collection or the users. Requests of such commands carry
+     * an idempotency key, so that a request replayed after a lost connection is applied only once.
+     *
+     * @return true if executing the command twice differs from executing it once
+     */
+    public boolean isMutating() {
+        return false;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -21,6 +21,9 @@ public enum CommandName {
     HISTORY,             // Command to display command history
     EXECUTE_SCRIPT,      // Command to execute commands from a script file
     LOGIN,               // Command to log in
-    REGISTER             // Command to register a new user
+    REGISTER,            // Command to register a new user
+    DOWNLOAD_SNAPSHOT,   // Command to download the whole collection at once
+    CHANGES,             // Command to fetch the tickets changed after a given change
+    BATCH                // Command to execute several requests in one round trip
 }
 
@@ -39,6 +39,11 @@ public class Add extends Command {
         this.ticketForm = ticketForm;
     }
 
+    @Override
+    public boolean isMutating() {
+        return true;
+    }
+
     /**
      * Executes the command.
      *
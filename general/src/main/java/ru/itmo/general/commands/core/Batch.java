@@ -0,0 +1,91 @@
+package ru.itmo.general.commands.core;
+
+import ru.itmo.general.commands.Command;
+import ru.itmo.general.commands.CommandName;
+import ru.itmo.general.managers.CommandManager;
+import ru.itmo.general.network.Request;
+import ru.itmo.general.network.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command 'batch'. Executes several requests sent in one frame and answers them all in one frame,
+ * sparing a round trip per request. The data of the request is an array: whether the requests may be executed
+ * in parallel and the list of the requests; the data of the response is the list of their responses, in the same
+ * order. The requests are executed on behalf of the user who sent the batch.
+ *
+ * @author zevtos
+ */
+public class Batch extends Command {
+    /**
+     * The largest number of requests in one batch; larger lists are sent as several batches.
+     */
+    public static final int MAX_SIZE = 256;
+
+    public Batch() {
+        super(CommandName.BATCH, "execute several requests in one round trip");
+    }
+
+    /**
+     * Builds the request of a batch.
+     *
+     * @param requests the requests to execute
+     * @param parallel true if the requests do not depend on each other and may be executed in parallel
+     * @return the request of the batch
+     */
+    public static Request of(List<Request> requests, boolean parallel) {
+        return new Request(CommandName.BATCH.name().toLowerCase(), new Object[]{parallel, new ArrayList<>(requests)});
+    }
+
+    /**
+     * Returns the requests of a batch.
+     *
+     * @param request a request
+     * @return the requests of the batch, an empty list if the request is not a batch, or null if the batch is malformed
+     */
+    public static List<Request> requestsOf(Request request) {
+        if (!CommandName.BATCH.name().toLowerCase().equals(request.getCommand())) return List.of();
+        if (!(request.getData() instanceof Object[] data) || data.length != 2 || !(data[1] instanceof List<?> list)) {
+            return null;
+        }
+        List<Request> requests = new ArrayList<>(list.size());
+        for (Object element : list) {
+            if (!(element instanceof Request part)) return null;
+            requests.add(part);
+        }
+        return requests;
+    }
+
+    /**
+     * Checks whether the requests of a batch may be executed in parallel.
+     *
+     * @param request the request of the batch
+     * @return true if the batch asks for parallel execution
+     */
+    public static boolean isParallel(Request request) {
+        return request.getData() instanceof Object[] data && data.length > 0 && Boolean.TRUE.equals(data[0]);
+    }
+
+    /**
+     * Executes the command.
+     *
+     * @param request the request of the batch
+     * @return the response holding the responses to the requests of the batch
+     */
+    @Override
+    public Response execute(Request request) {
+        return CommandManager.handleBatch(request, CommandManager::handle);
+    }
+
+    /**
+     * A batch is built by the application, not typed in the console.
+     *
+     * @param arguments the command arguments
+     * @return the request indicating that the command cannot be used from the console
+     */
+    @Override
+    public Request execute(String[] arguments) {
+        return new Request(false, getName(), "Команда batch не вызывается из консоли");
+    }
+}
@@ -0,0 +1,92 @@
+package ru.itmo.general.commands.core;
+
+import ru.itmo.general.commands.Command;
+import ru.itmo.general.commands.CommandName;
+import ru.itmo.general.exceptions.InvalidNumberOfElementsException;
+import ru.itmo.general.managers.CollectionManager;
+import ru.itmo.general.models.Ticket;
+import ru.itmo.general.network.Request;
+import ru.itmo.general.network.Response;
+import ru.itmo.general.utility.base.Journaled;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Command 'changes'. Fetches the tickets changed after the given change, so that a client refreshes
+ * only what changed instead of downloading the whole collection.
+ * The data of the response is an array: the epoch of the journal, the number of the last change,
+ * whether the changes are complete, the changed tickets and the IDs of the removed tickets.
+ * If the changes are not complete, the client has to download the whole collection.
+ *
+ * @author zevtos
+ */
+public class Changes extends Command {
+    private CollectionManager<Ticket> ticketCollectionManager;
+    private Journaled journal;
+
+    public Changes() {
+        super(CommandName.CHANGES, "<number> fetch the tickets changed after the change with the given number");
+    }
+
+    /**
+     * Constructor for creating an instance of the Changes command.
+     *
+     * @param ticketCollectionManager the ticket collection manager
+     * @param journal                 the journal of the changes of the collection
+     */
+    public Changes(CollectionManager<Ticket> ticketCollectionManager, Journaled journal) {
+        this();
+        this.ticketCollectionManager = ticketCollectionManager;
+        this.journal = journal;
+    }
+
+    /**
+     * Executes the command.
+     *
+     * @param request the command request holding the number of the last change seen by the client
+     * @return the response holding the changes
+     */
+    @Override
+    public Response execute(Request request) {
+        long sequence = request.getData() instanceof Number number ? number.longValue() : -1;
+        // The number is read first, so the tickets returned are at least as new as the changes it covers
+        long lastSequence = journal.lastSequence();
+        Collection<Integer> changed = journal.changedSince(sequence);
+        List<Ticket> tickets = new ArrayList<>();
+        List<Integer> removed = new ArrayList<>();
+        if (changed != null) {
+            for (Integer id : changed) {
+                Ticket ticket = ticketCollectionManager.byId(id);
+                if (ticket != null) {
+                    tickets.add(ticket);
+                } else {
+                    removed.add(id);
+                }
+            }
+        }
+        Object[] responseData = new Object[]{journal.epoch(), lastSequence, changed != null, tickets, removed};
+        return new Response(true, null, responseData);
+    }
+
+    /**
+     * Executes the command.
+     *
+     * @param arguments the command arguments
+     * @return the request indicating the success or failure of the command execution
+     */
+    @Override
+    public Request execute(String[] arguments) {
+        try {
+            if (arguments.length < 2 || arguments[1].isEmpty()) throw new InvalidNumberOfElementsException();
+
+            long sequence = Long.parseLong(arguments[1]);
+            return new Request(getName(), sequence);
+        } catch (InvalidNumberOfElementsException exception) {
+            return new Request(false, getName(), getUsingError());
+        } catch (NumberFormatException exception) {
+            return new Request(false, getName(), "The number of a change must be a number!");
+        }
+    }
+}
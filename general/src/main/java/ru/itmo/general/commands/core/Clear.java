@@ -24,6 +24,11 @@ public class Clear extends Command {
         this.ticketCollectionManager = ticketCollectionManager;
     }
 
+    @Override
+    public boolean isMutating() {
+        return true;
+    }
+
     /**
      * Executes the command.
      *
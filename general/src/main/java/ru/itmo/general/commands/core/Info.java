@@ -31,6 +31,11 @@ public class Info extends Command {
         this.ticketCollectionManager = ticketCollectionManager;
     }
 
+    @Override
+    public boolean isInline() {
+        return true;
+    }
+
     /**
      * Executes the command.
      *
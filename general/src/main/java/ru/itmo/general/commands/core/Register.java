@@ -34,6 +34,11 @@ public class Register extends Command {
         this.userDAO = userDAO;
     }
 
+    @Override
+    public boolean isMutating() {
+        return true;
+    }
+
     /**
      * Executes the command.
      *
@@ -38,6 +38,11 @@ public class Remove extends Command {
         this.dao = dao;
     }
 
+    @Override
+    public boolean isMutating() {
+        return true;
+    }
+
     /**
      * Executes the command.
      *
@@ -44,6 +44,11 @@ public class AddIfMin extends Command {
         this.ticketForm = ticketForm;
     }
 
+    @Override
+    public boolean isMutating() {
+        return true;
+    }
+
     /**
      * Executes the command.
      *
@@ -9,6 +9,8 @@ import ru.itmo.general.models.Ticket;
 import ru.itmo.general.network.Request;
 import ru.itmo.general.network.Response;
 
+import java.util.List;
+
 /**
  * Command 'min_by_discount'. Displays the element with the minimum discount.
  *
@@ -26,6 +28,11 @@ public class MinByDiscount extends Command {
         this.ticketCollectionManager = ticketCollectionManager;
     }
 
+    @Override
+    public boolean isInline() {
+        return true;
+    }
+
     /**
      * Executes the command.
      *
@@ -35,9 +42,11 @@ public class MinByDiscount extends Command {
     @Override
     public Response execute(Request request) {
         try {
-            if (ticketCollectionManager.collectionSize() == 0) throw new EmptyValueException();
+            // Команда выполняется на потоке чтения, поэтому читает неизменяемый снимок коллекции без замка
+            List<Ticket> tickets = ticketCollectionManager.snapshot();
+            if (tickets.isEmpty()) throw new EmptyValueException();
 
-            Ticket minTicketByDiscount = minByDiscount();
+            Ticket minTicketByDiscount = minByDiscount(tickets);
             return new Response(true, null, minTicketByDiscount.toString());
         } catch (EmptyValueException exception) {
             return new Response(false, "The collection is empty!", null);
@@ -61,16 +70,16 @@ public class MinByDiscount extends Command {
         }
     }
 
-    private Ticket minByDiscount() {
+    private Ticket minByDiscount(List<Ticket> tickets) {
         long minDiscount = 101;
-        int ticketId = -1;
-        for (Ticket c : ticketCollectionManager.getCollection()) {
+        Ticket minTicket = null;
+        for (Ticket c : tickets) {
             if (c.getDiscount() != null && c.getDiscount() < minDiscount) {
                 minDiscount = c.getDiscount();
-                ticketId = c.getId();
+                minTicket = c;
             }
         }
-        if (ticketId == -1) return ticketCollectionManager.getFirst();
-        return ticketCollectionManager.byId(ticketId);
+        if (minTicket == null) return tickets.get(0);
+        return minTicket;
     }
 }
@@ -32,6 +32,11 @@ public class RemoveFirst extends Command {
         this.dao = dao;
     }
 
+    @Override
+    public boolean isMutating() {
+        return true;
+    }
+
     /**
      * Executes the command.
      *
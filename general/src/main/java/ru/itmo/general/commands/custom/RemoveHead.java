@@ -31,6 +31,11 @@ public class RemoveHead extends Command {
         this.dao = dao;
     }
 
+    @Override
+    public boolean isMutating() {
+        return true;
+    }
+
     /**
      * Executes the command.
      *
@@ -9,6 +9,8 @@ import ru.itmo.general.models.Ticket;
 import ru.itmo.general.network.Request;
 import ru.itmo.general.network.Response;
 
+import java.util.List;
+
 /**
  * Command 'sum_of_price'. Sum of prices of all tickets.
  *
@@ -26,6 +28,11 @@ public class SumOfPrice extends Command {
         this.ticketCollectionManager = ticketCollectionManager;
     }
 
+    @Override
+    public boolean isInline() {
+        return true;
+    }
+
     /**
      * Executes the command.
      *
@@ -35,8 +42,10 @@ public class SumOfPrice extends Command {
     @Override
     public Response execute(Request request) {
         try {
-            if (ticketCollectionManager.collectionSize() == 0) throw new EmptyValueException();
-            var sumOfPrice = getSumOfPrice();
+            // Команда выполняется на потоке чтения, поэтому читает неизменяемый снимок коллекции без замка
+            List<Ticket> tickets = ticketCollectionManager.snapshot();
+            if (tickets.isEmpty()) throw new EmptyValueException();
+            var sumOfPrice = getSumOfPrice(tickets);
 
             return new Response(true, null, sumOfPrice);
         } catch (EmptyValueException exception) {
@@ -60,8 +69,8 @@ public class SumOfPrice extends Command {
         }
     }
 
-    private Double getSumOfPrice() {
-        return ticketCollectionManager.getCollection().stream()
+    private Double getSumOfPrice(List<Ticket> tickets) {
+        return tickets.stream()
                 .map(Ticket::getPrice)
                 .mapToDouble(Double::doubleValue)
                 .sum();
@@ -37,6 +37,11 @@ public class Update extends Command {
         this.ticketForm = ticketForm;
     }
 
+    @Override
+    public boolean isMutating() {
+        return true;
+    }
+
     /**
      * Executes the command.
      *
@@ -22,6 +22,14 @@ public interface CollectionManager<T> {
      */
     List<T> getCollection();
 
+    /**
+     * Gets an immutable copy of the collection as of its last change, which may be read without locking,
+     * e.g. by {@linkplain ru.itmo.general.commands.Command#isInline() inline} commands.
+     *
+     * @return the snapshot of the collection
+     */
+    List<T> snapshot();
+
     /**
      * Gets an object by its identifier.
      *
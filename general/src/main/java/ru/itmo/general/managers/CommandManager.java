@@ -8,16 +8,25 @@ import ru.itmo.general.commands.special.SumOfPrice;
 import ru.itmo.general.commands.update.Update;
 import ru.itmo.general.models.Ticket;
 import ru.itmo.general.models.forms.Form;
+import ru.itmo.general.network.Deadline;
 import ru.itmo.general.network.Request;
 import ru.itmo.general.network.Response;
 import ru.itmo.general.utility.base.Accessible;
+import ru.itmo.general.utility.base.Journaled;
 import ru.itmo.general.utility.base.Registered;
 import ru.itmo.general.utility.console.Console;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
  * Manages commands.
@@ -38,6 +47,10 @@ public class CommandManager {
      */
     @Getter
     private static Map<String, Command> commands;
+    /**
+     * Commands that cannot be part of a batch: a batch is authenticated as a whole and is not nested.
+     */
+    private static final Set<String> NOT_BATCHED = Set.of("batch", "exit", "login", "register");
 
     /**
      * Registers a command.
@@ -54,10 +67,13 @@ public class CommandManager {
         register("exit", new Exit());
     }
 
-    public static void initServerCommands(CollectionManager<Ticket> ticketCollectionManager, Accessible dao, Registered userDao) {
+    public static void initServerCommands(CollectionManager<Ticket> ticketCollectionManager, Accessible dao,
+                                          Registered userDao, Journaled journal) {
         init();
         register("info", new Info(ticketCollectionManager));
         register("show", new Show(ticketCollectionManager));
+        register("download_snapshot", new DownloadSnapshot(ticketCollectionManager));
+        register("changes", new Changes(ticketCollectionManager, journal));
         register("add", new Add(ticketCollectionManager));
         register("update", new Update(ticketCollectionManager, dao));
         register("remove_by_id", new Remove(ticketCollectionManager, dao));
@@ -70,6 +86,7 @@ public class CommandManager {
         register("max_by_name", new MaxByName(ticketCollectionManager));
         register("register", new Register(userDao));
         register("login", new Login(userDao));
+        register("batch", new Batch());
     }
 
     public static void initClientCommands(Form<Ticket> ticketForm) {
@@ -115,10 +132,33 @@ public class CommandManager {
         register("history", new History());
     }
 
+    /**
+     * Checks whether a command may be executed right on the thread that has read its request.
+     *
+     * @param commandName The name of the command.
+     * @return true if the command is registered and declares itself {@linkplain Command#isInline() inline}.
+     */
+    public static boolean isInline(String commandName) {
+        var command = getCommands().get(commandName);
+        return command != null && command.isInline();
+    }
+
+    /**
+     * Checks whether a command changes the collection or the users, so that its requests must not be applied twice.
+     *
+     * @param commandName The name of the command.
+     * @return true if the command is registered and declares itself {@linkplain Command#isMutating() mutating}.
+     */
+    public static boolean isMutating(String commandName) {
+        var command = getCommands().get(commandName);
+        return command != null && command.isMutating();
+    }
+
     /**
      * Processes the command received from the client.
      * Executes the command if it exists in the command dictionary.
      * If the command does not exist, returns a Response indicating that the command was not found.
+     * A command is not started if the {@link Deadline} of the request has already passed.
      *
      * @param request The request containing the command to be processed.
      * @return The Response generated after processing the command.
@@ -126,12 +166,103 @@ public class CommandManager {
     public static Response handle(Request request) {
         var command = getCommands().get(request.getCommand());
         if (command == null) return new Response(false, request.getCommand(), "Command not found!");
+        if (Deadline.currentExpired()) return new Response(false, Response.DEADLINE_EXCEEDED);
         if (!"exit".equals(request.getCommand()) && !"save".equals(request.getCommand())) {
             return command.execute(request);
         }
         return new Response(false, "Unknown command");
     }
 
+    /**
+     * Executes the requests of a batch on behalf of the user who sent it, in order.
+     *
+     * @param batch    The authenticated request of the batch.
+     * @param executor Executes one request of the batch.
+     * @return The Response holding the list of the responses, in the order of the requests.
+     * @see #handleBatch(Request, Function, Executor)
+     */
+    public static Response handleBatch(Request batch, Function<Request, Response> executor) {
+        return handleBatch(batch, executor, null);
+    }
+
+    /**
+     * Executes the requests of a batch on behalf of the user who sent it, in order, or in parallel if the batch
+     * asks for it. A failed request does not stop the following ones: every request gets its own response.
+     * In parallel, the thread of the batch executes requests itself and asks the given executor for helpers;
+     * the executor may refuse a helper with a {@link RejectedExecutionException}, so it decides how far a batch fans out.
+     * A batch holds at most {@link Batch#MAX_SIZE} requests.
+     *
+     * @param batch            The authenticated request of the batch.
+     * @param executor         Executes one request of the batch.
+     * @param parallelExecutor Runs the helpers of a parallel batch, or null to execute every batch in order.
+     * @return The Response holding the list of the responses, in the order of the requests.
+     */
+    public static Response handleBatch(Request batch, Function<Request, Response> executor, Executor parallelExecutor) {
+        List<Request> requests = Batch.requestsOf(batch);
+        if (requests == null) return new Response(false, "Invalid batch");
+        if (requests.size() > Batch.MAX_SIZE) {
+            return new Response(false, "Пакет не может содержать больше " + Batch.MAX_SIZE + " запросов");
+        }
+        for (Request request : requests) {
+            if (NOT_BATCHED.contains(request.getCommand())) {
+                return new Response(false, "Команда " + request.getCommand() + " не может входить в пакет");
+            }
+            request.setUserId(batch.getUserId());
+            request.setLogin(batch.getLogin());
+            request.setPassword(null);
+            request.setToken(null);
+        }
+        Response[] responses = new Response[requests.size()];
+        if (parallelExecutor != null && Batch.isParallel(batch)) {
+            AtomicInteger next = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(requests.size());
+            // Срок запроса привязан к потоку, поэтому передаётся помощникам явно
+            Deadline deadline = Deadline.current();
+            for (int i = 1; i < requests.size(); i++) {
+                try {
+                    parallelExecutor.execute(() -> handleBatched(requests, responses, next, done, executor, deadline));
+                } catch (RejectedExecutionException e) {
+                    break;
+                }
+            }
+            // Поток пакета сам разбирает запросы, так что пакет не ждёт помощников, которые ещё не запущены
+            handleBatched(requests, responses, next, done, executor, null);
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new Response(false, "Invalid batch");
+            }
+        } else {
+            handleBatched(requests, responses, new AtomicInteger(), new CountDownLatch(requests.size()), executor, null);
+        }
+        return new Response(true, null, new ArrayList<>(Arrays.asList(responses)));
+    }
+
+    /**
+     * Executes the requests of a batch not yet taken by another thread.
+     *
+     * @param deadline The deadline to set on this thread, or null if it is already set.
+     */
+    private static void handleBatched(List<Request> requests, Response[] responses, AtomicInteger next,
+                                      CountDownLatch done, Function<Request, Response> executor, Deadline deadline) {
+        if (deadline != null) Deadline.set(deadline);
+        try {
+            int index;
+            while ((index = next.getAndIncrement()) < requests.size()) {
+                try {
+                    responses[index] = executor.apply(requests.get(index));
+                } catch (RuntimeException e) {
+                    responses[index] = new Response(false, "Invalid request");
+                } finally {
+                    done.countDown();
+                }
+            }
+        } finally {
+            if (deadline != null) Deadline.clear();
+        }
+    }
+
     /**
      * Processes the command received from the server console.
      * Executes the command if it exists in the command dictionary.
@@ -145,6 +145,15 @@ public class Ticket extends Element {
         return id;
     }
 
+    /**
+     * Checks whether the ticket has an id; a ticket built by a form gets one only when the server adds it.
+     *
+     * @return {@code true} if the id is set
+     */
+    public boolean hasId() {
+        return id != null;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
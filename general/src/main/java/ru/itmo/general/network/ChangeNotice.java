@@ -0,0 +1,119 @@
+package ru.itmo.general.network;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A notice about a change of a ticket, published by the server on a UDP multicast group.
+ * A notice only says what changed; clients fetch the changed tickets themselves with the {@code changes} command.
+ * <p>
+ * Notices are numbered by the server in the order of the changes. A datagram holds the epoch of the server
+ * (its start time, so that a restart is noticed), the number of the last change and up to
+ * {@link #MAX_NOTICES} notices. When nothing changes the server still sends a datagram without notices every
+ * {@link #HEARTBEAT_MILLIS}, so a client also notices a lost datagram carrying the last changes.
+ * <pre>
+ * datagram: marker(1) epoch(8) lastSequence(8) count(2) notice*count
+ * notice:   sequence(8) version(8) operation(1) ticketId(4)
+ * </pre>
+ *
+ * @param sequence  the number of the change
+ * @param version   the version of the collection after the change
+ * @param operation what happened to the ticket
+ * @param ticketId  the ID of the ticket
+ * @author zevtos
+ */
+public record ChangeNotice(long sequence, long version, Operation operation, int ticketId) {
+    /**
+     * First byte of a datagram with change notices.
+     */
+    public static final byte MARKER = (byte) 0xC7;
+
+    /**
+     * Interval between datagrams sent when nothing changes.
+     */
+    public static final long HEARTBEAT_MILLIS = 5000;
+
+    /**
+     * Largest datagram sent, small enough not to be fragmented on an Ethernet network.
+     */
+    public static final int MAX_DATAGRAM_SIZE = 1400;
+
+    private static final int HEADER_SIZE = 1 + 8 + 8 + 2;
+    private static final int NOTICE_SIZE = 8 + 8 + 1 + 4;
+
+    /**
+     * Largest number of notices in one datagram.
+     */
+    public static final int MAX_NOTICES = (MAX_DATAGRAM_SIZE - HEADER_SIZE) / NOTICE_SIZE;
+
+    /**
+     * Writes a datagram.
+     *
+     * @param target       the buffer to write to, with at least {@link #MAX_DATAGRAM_SIZE} bytes remaining
+     * @param epoch        the epoch of the server
+     * @param lastSequence the number of the last change made on the server
+     * @param notices      at most {@link #MAX_NOTICES} notices
+     */
+    public static void write(ByteBuffer target, long epoch, long lastSequence, List<ChangeNotice> notices) {
+        if (notices.size() > MAX_NOTICES) {
+            throw new IllegalArgumentException("Too many notices for one datagram: " + notices.size());
+        }
+        target.put(MARKER).putLong(epoch).putLong(lastSequence).putShort((short) notices.size());
+        for (ChangeNotice notice : notices) {
+            target.putLong(notice.sequence)
+                    .putLong(notice.version)
+                    .put((byte) notice.operation.ordinal())
+                    .putInt(notice.ticketId);
+        }
+    }
+
+    /**
+     * Reads a datagram.
+     *
+     * @param source the received datagram
+     * @return the content of the datagram, or null if it is not a datagram with change notices
+     */
+    public static Batch read(ByteBuffer source) {
+        if (!source.hasRemaining() || source.get() != MARKER) return null;
+        try {
+            long epoch = source.getLong();
+            long lastSequence = source.getLong();
+            int count = Short.toUnsignedInt(source.getShort());
+            if (count > MAX_NOTICES) return null;
+            List<ChangeNotice> notices = new ArrayList<>(count);
+            Operation[] operations = Operation.values();
+            for (int i = 0; i < count; i++) {
+                long sequence = source.getLong();
+                long version = source.getLong();
+                int operation = source.get();
+                int ticketId = source.getInt();
+                if (operation < 0 || operation >= operations.length) return null;
+                notices.add(new ChangeNotice(sequence, version, operations[operation], ticketId));
+            }
+            return new Batch(epoch, lastSequence, notices);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    /**
+     * What happened to a ticket.
+     */
+    public enum Operation {
+        ADD,
+        UPDATE,
+        REMOVE
+    }
+
+    /**
+     * The content of one datagram.
+     *
+     * @param epoch        the epoch of the server
+     * @param lastSequence the number of the last change made on the server
+     * @param notices      the notices carried by the datagram, empty for a heartbeat
+     */
+    public record Batch(long epoch, long lastSequence, List<ChangeNotice> notices) {
+    }
+}
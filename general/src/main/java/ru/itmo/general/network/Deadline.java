@@ -0,0 +1,97 @@
+package ru.itmo.general.network;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The point in time after which nobody waits for the result of a request any more.
+ * The client sends how long it is going to wait for the response ({@link Sendable#getTimeoutMillis()});
+ * the server turns it into a deadline when the request is received and binds it to the thread processing
+ * the request, so that command execution and database queries can give up on work whose result would be lost.
+ *
+ * @author zevtos
+ */
+public final class Deadline {
+    private static final ThreadLocal<Deadline> current = new ThreadLocal<>();
+    private final long expiresAtNanos;
+
+    private Deadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    /**
+     * Creates a deadline relative to a moment measured by {@link System#nanoTime()}.
+     *
+     * @param startNanos    the moment the timeout starts at
+     * @param timeoutMillis the timeout in milliseconds
+     * @return the deadline
+     */
+    public static Deadline after(long startNanos, long timeoutMillis) {
+        return new Deadline(startNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+    }
+
+    /**
+     * Returns the deadline of the request processed by the current thread.
+     *
+     * @return the deadline, or null if the request has none
+     */
+    public static Deadline current() {
+        return current.get();
+    }
+
+    /**
+     * Binds a deadline to the current thread. It must be cleared with {@link #clear()} once the request is processed.
+     *
+     * @param deadline the deadline, or null for none
+     */
+    public static void set(Deadline deadline) {
+        current.set(deadline);
+    }
+
+    /**
+     * Removes the deadline bound to the current thread.
+     */
+    public static void clear() {
+        current.remove();
+    }
+
+    /**
+     * Checks whether the deadline of the current thread has passed.
+     *
+     * @return true if there is a deadline and it has passed
+     */
+    public static boolean currentExpired() {
+        Deadline deadline = current.get();
+        return deadline != null && deadline.isExpired();
+    }
+
+    /**
+     * Returns the JDBC query timeout for the current thread: the time left until its deadline,
+     * rounded up to whole seconds.
+     *
+     * @return the timeout in seconds, at least 1, or 0 (no timeout) if there is no deadline
+     */
+    public static int queryTimeoutSeconds() {
+        Deadline deadline = current.get();
+        if (deadline == null) return 0;
+        long remaining = deadline.remainingMillis();
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, (remaining + 999) / 1000));
+    }
+
+    /**
+     * Checks whether the deadline has passed.
+     *
+     * @return true if the deadline has passed
+     */
+    public boolean isExpired() {
+        return System.nanoTime() - expiresAtNanos >= 0;
+    }
+
+    /**
+     * Returns the time left until the deadline.
+     *
+     * @return the remaining time in milliseconds, 0 if the deadline has passed
+     */
+    public long remainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(expiresAtNanos - System.nanoTime()));
+    }
+}
@@ -0,0 +1,127 @@
+package ru.itmo.general.network;
+
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Incremental decoder for length-prefixed frames.
+ * Every frame on the wire is a 4-byte big-endian payload length followed by the payload itself.
+ * The decoder keeps its partial-read state between calls, so bytes can be fed in whatever chunks
+ * the channel returns them and only complete payloads are handed out.
+ *
+ * @author zevtos
+ */
+public class FrameDecoder {
+    /**
+     * Size of the frame header in bytes.
+     */
+    public static final int HEADER_SIZE = Integer.BYTES;
+
+    /**
+     * Default upper bound for a single frame payload.
+     */
+    public static final int DEFAULT_MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    private final int maxFrameSize;
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    private final Deque<byte[]> frames = new ArrayDeque<>();
+    private State state = State.HEADER;
+    private ByteBuffer body;
+
+    /**
+     * Constructs a decoder with the default maximum frame size.
+     */
+    public FrameDecoder() {
+        this(DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /**
+     * Constructs a decoder with the specified maximum frame size.
+     *
+     * @param maxFrameSize the largest payload length accepted from the peer
+     */
+    public FrameDecoder(int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Consumes all remaining bytes of the buffer, queueing every frame completed by them.
+     *
+     * @param src the bytes read from the channel, ready for reading
+     * @throws StreamCorruptedException if the peer announced an invalid frame length
+     */
+    public void feed(ByteBuffer src) throws StreamCorruptedException {
+        while (src.hasRemaining()) {
+            if (state == State.HEADER) {
+                transfer(src, header);
+                if (header.hasRemaining()) return;
+                header.flip();
+                int length = header.getInt();
+                header.clear();
+                if (length < 0 || length > maxFrameSize) {
+                    throw new StreamCorruptedException("Invalid frame length: " + length);
+                }
+                body = ByteBuffer.allocate(length);
+                state = State.BODY;
+            }
+            transfer(src, body);
+            if (!body.hasRemaining()) {
+                frames.add(body.array());
+                body = null;
+                state = State.HEADER;
+            }
+        }
+    }
+
+    /**
+     * Checks whether at least one complete frame is waiting to be taken.
+     *
+     * @return true if {@link #poll()} will return a payload
+     */
+    public boolean hasFrame() {
+        return !frames.isEmpty();
+    }
+
+    /**
+     * Checks whether the decoder holds no bytes at all, neither complete frames nor a part of the next one.
+     *
+     * @return true if everything fed so far has been taken
+     */
+    public boolean isIdle() {
+        return frames.isEmpty() && state == State.HEADER && header.position() == 0;
+    }
+
+    /**
+     * Takes the oldest complete frame.
+     *
+     * @return the payload of the frame, or null if no frame is complete yet
+     */
+    public byte[] poll() {
+        return frames.poll();
+    }
+
+    /**
+     * Drops any partially read and queued frames, e.g. after a reconnect.
+     */
+    public void reset() {
+        header.clear();
+        frames.clear();
+        body = null;
+        state = State.HEADER;
+    }
+
+    private static void transfer(ByteBuffer src, ByteBuffer dst) {
+        int count = Math.min(src.remaining(), dst.remaining());
+        ByteBuffer slice = src.slice();
+        slice.limit(count);
+        dst.put(slice);
+        src.position(src.position() + count);
+    }
+
+    private enum State {
+        HEADER,
+        BODY
+    }
+}
@@ -0,0 +1,25 @@
+package ru.itmo.general.network;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Builds length-prefixed frames in the format understood by {@link FrameDecoder}.
+ *
+ * @author zevtos
+ */
+public class FrameEncoder {
+
+    /**
+     * Wraps a payload into a frame.
+     *
+     * @param payload the serialized message
+     * @return a buffer holding the header and the payload, ready for writing
+     */
+    public static ByteBuffer encode(byte[] payload) {
+        ByteBuffer frame = ByteBuffer.allocate(FrameDecoder.HEADER_SIZE + payload.length);
+        frame.putInt(payload.length);
+        frame.put(payload);
+        frame.flip();
+        return frame;
+    }
+}
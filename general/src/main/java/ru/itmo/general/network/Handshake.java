@@ -0,0 +1,229 @@
+package ru.itmo.general.network;
+
+import ru.itmo.general.network.codec.Codec;
+import ru.itmo.general.network.codec.Compression;
+
+import java.io.StreamCorruptedException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Control frames negotiating the options of a connection.
+ * Right after connecting, the client sends a hello frame advertising the version of the protocol it speaks,
+ * the optional features it understands, the codecs and compression algorithms it supports and the largest frame
+ * it accepts. The server answers with a welcome frame holding the options chosen from what both sides support,
+ * the largest frame it accepts and how many requests the client may have in flight on the connection.
+ * <pre>
+ * hello:   marker(1) version(1) features(4) codecs(1) maxFrameSize(4) count(1) compression*count
+ * welcome: marker(1) version(1) features(4) codec(1) compression(1) maxFrameSize(4) pipelineDepth(4)
+ * </pre>
+ * A client that sends no hello, such as one released before the handshake, keeps the {@link #LEGACY_FEATURES},
+ * so newer features are only used with clients that announced them.
+ *
+ * @author zevtos
+ */
+public class Handshake {
+    /**
+     * First byte of a hello frame.
+     */
+    public static final byte HELLO = (byte) 0xC8;
+
+    /**
+     * First byte of a welcome frame.
+     */
+    public static final byte WELCOME = (byte) 0xC9;
+
+    /**
+     * Version of the protocol spoken by this build.
+     */
+    public static final int PROTOCOL_VERSION = 1;
+
+    /**
+     * Feature: the client reads responses sent as a {@link SnapshotFrame}.
+     */
+    public static final int SNAPSHOT_FRAMES = 1;
+
+    /**
+     * Feature: the connection may be moved to shared memory with a shared memory attach frame.
+     */
+    public static final int SHARED_MEMORY = 1 << 1;
+
+    /**
+     * Feature: the client answers heartbeat pings at any time, even while its user is idle,
+     * so the server may close the connection when a ping stays unanswered.
+     */
+    public static final int HEARTBEATS = 1 << 2;
+
+    /**
+     * Features of a connection whose client sent no hello.
+     */
+    public static final int LEGACY_FEATURES = 0;
+
+    /**
+     * Compression id meaning that responses are not compressed.
+     */
+    public static final int NO_COMPRESSION = 0;
+
+    private Handshake() {
+    }
+
+    /**
+     * Checks whether a payload is a hello frame.
+     *
+     * @param payload the frame payload
+     * @return true if it is a hello frame
+     */
+    public static boolean isHello(byte[] payload) {
+        return payload.length > 0 && payload[0] == HELLO;
+    }
+
+    /**
+     * Checks whether a payload is a welcome frame.
+     *
+     * @param payload the frame payload
+     * @return true if it is a welcome frame
+     */
+    public static boolean isWelcome(byte[] payload) {
+        return payload.length > 0 && payload[0] == WELCOME;
+    }
+
+    /**
+     * Chooses the options of a connection from what the client offered and what the server supports.
+     * The binary codec is preferred over serialization, and the first offered compression algorithm known
+     * to this build is chosen.
+     *
+     * @param hello         the offer of the client
+     * @param features      the features the server supports on this connection
+     * @param maxFrameSize  the largest frame the server accepts
+     * @param pipelineDepth the number of requests the client may have in flight
+     * @return the options of the connection
+     */
+    public static Welcome welcome(Hello hello, int features, int maxFrameSize, int pipelineDepth) {
+        Codec codec = hello.supports(Codec.BINARY) || !hello.supports(Codec.SERIALIZATION)
+                ? Codec.BINARY : Codec.SERIALIZATION;
+        int compression = NO_COMPRESSION;
+        for (int id : hello.compressions()) {
+            if (Compression.isSupported(id)) {
+                compression = id;
+                break;
+            }
+        }
+        return new Welcome(Math.min(PROTOCOL_VERSION, hello.version()), hello.features() & features, codec,
+                compression, maxFrameSize, pipelineDepth);
+    }
+
+    /**
+     * The offer of a client.
+     *
+     * @param version      the version of the protocol spoken by the client
+     * @param features     the features the client understands
+     * @param codecs       the codecs the client can read, one bit per {@link Codec#ordinal()}
+     * @param maxFrameSize the largest frame the client accepts
+     * @param compressions the compression algorithms the client can decompress, in order of preference
+     */
+    public record Hello(int version, int features, int codecs, int maxFrameSize, int[] compressions) {
+        /**
+         * Checks whether the client can read a codec.
+         *
+         * @param codec the codec
+         * @return true if the client offered the codec
+         */
+        public boolean supports(Codec codec) {
+            return (codecs & (1 << codec.ordinal())) != 0;
+        }
+
+        /**
+         * Builds the payload of the hello frame.
+         *
+         * @return the payload
+         */
+        public byte[] toPayload() {
+            ByteBuffer payload = ByteBuffer.allocate(12 + compressions.length);
+            payload.put(HELLO).put((byte) version).putInt(features).put((byte) codecs).putInt(maxFrameSize)
+                    .put((byte) compressions.length);
+            for (int id : compressions) {
+                payload.put((byte) id);
+            }
+            return payload.array();
+        }
+
+        /**
+         * Reads the payload of a hello frame.
+         *
+         * @param payload the payload
+         * @return the offer
+         * @throws StreamCorruptedException if the payload is malformed
+         */
+        public static Hello of(byte[] payload) throws StreamCorruptedException {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(payload, 1, payload.length - 1);
+                int version = buffer.get() & 0xFF;
+                int features = buffer.getInt();
+                int codecs = buffer.get() & 0xFF;
+                int maxFrameSize = buffer.getInt();
+                int[] compressions = new int[buffer.get() & 0xFF];
+                for (int i = 0; i < compressions.length; i++) {
+                    compressions[i] = buffer.get() & 0xFF;
+                }
+                return new Hello(version, features, codecs, maxFrameSize, compressions);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw new StreamCorruptedException("Malformed hello frame");
+            }
+        }
+    }
+
+    /**
+     * The options chosen by the server.
+     *
+     * @param version       the version of the protocol spoken on the connection
+     * @param features      the features used on the connection
+     * @param codec         the codec the client should send its requests in
+     * @param compression   the algorithm large responses are compressed with, or {@link #NO_COMPRESSION}
+     * @param maxFrameSize  the largest frame the server accepts
+     * @param pipelineDepth the number of requests the client may have in flight
+     */
+    public record Welcome(int version, int features, Codec codec, int compression, int maxFrameSize,
+                          int pipelineDepth) {
+        /**
+         * Checks whether a feature is used on the connection.
+         *
+         * @param feature the feature flag
+         * @return true if both sides support the feature
+         */
+        public boolean has(int feature) {
+            return (features & feature) != 0;
+        }
+
+        /**
+         * Builds the payload of the welcome frame.
+         *
+         * @return the payload
+         */
+        public byte[] toPayload() {
+            return ByteBuffer.allocate(16)
+                    .put(WELCOME).put((byte) version).putInt(features).put((byte) codec.ordinal())
+                    .put((byte) compression).putInt(maxFrameSize).putInt(pipelineDepth)
+                    .array();
+        }
+
+        /**
+         * Reads the payload of a welcome frame.
+         *
+         * @param payload the payload
+         * @return the options
+         * @throws StreamCorruptedException if the payload is malformed
+         */
+        public static Welcome of(byte[] payload) throws StreamCorruptedException {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(payload, 1, payload.length - 1);
+                int version = buffer.get() & 0xFF;
+                int features = buffer.getInt();
+                Codec codec = Codec.values()[buffer.get() & 0xFF];
+                int compression = buffer.get() & 0xFF;
+                return new Welcome(version, features, codec, compression, buffer.getInt(), buffer.getInt());
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw new StreamCorruptedException("Malformed welcome frame");
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ru.itmo.general.network;
+
+/**
+ * Heartbeat control frames. The server sends a ping to a connection that has been idle for a while,
+ * and the client answers with a pong; a connection that stays silent after a ping is considered dead.
+ * The payloads are a single marker byte that never starts an encoded message.
+ *
+ * @author zevtos
+ */
+public class Heartbeat {
+    /**
+     * Payload of a ping frame.
+     */
+    public static final byte PING = (byte) 0xC2;
+
+    /**
+     * Payload of a pong frame.
+     */
+    public static final byte PONG = (byte) 0xC3;
+
+    private Heartbeat() {
+    }
+
+    /**
+     * Checks whether a payload is a ping.
+     *
+     * @param payload the frame payload
+     * @return true if it is a ping
+     */
+    public static boolean isPing(byte[] payload) {
+        return payload.length == 1 && payload[0] == PING;
+    }
+
+    /**
+     * Checks whether a payload is a pong.
+     *
+     * @param payload the frame payload
+     * @return true if it is a pong
+     */
+    public static boolean isPong(byte[] payload) {
+        return payload.length == 1 && payload[0] == PONG;
+    }
+}
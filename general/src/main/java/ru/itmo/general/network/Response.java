@@ -8,6 +8,32 @@ package ru.itmo.general.network;
  * @author zevtos
  */
 public class Response extends Sendable {
+    /**
+     * Message of the response to a request whose session token is unknown or expired.
+     */
+    public static final String SESSION_EXPIRED = "Сессия истекла. Войдите в систему снова";
+
+    /**
+     * Message of the response to a request rejected because the server is overloaded.
+     * The data of such a response is the delay in milliseconds after which the request may be retried.
+     */
+    public static final String SERVER_BUSY = "Сервер перегружен, повторите запрос позже";
+
+    /**
+     * Message of the response to a request which was not completed before the client stopped waiting for it.
+     */
+    public static final String DEADLINE_EXCEEDED = "Время ожидания запроса истекло";
+
+    /**
+     * Message of the response sent instead of a response larger than the frames the client accepts.
+     */
+    public static final String RESPONSE_TOO_LARGE = "Ответ слишком велик для клиента";
+
+    /**
+     * Message of the response to a request of a stream which was not executed, because an earlier request
+     * of the stream has failed.
+     */
+    public static final String STREAM_ABORTED = "Команда не выполнена из-за ошибки в предыдущей команде";
 
     /**
      * Constructs a response with the specified success status, message, and data payload.
@@ -45,6 +45,37 @@ public abstract class Sendable implements Serializable {
      */
     protected Integer userId;
 
+    /**
+     * Session token: sent by the client instead of the login and password once a session is open,
+     * and returned by the server in the response that opened the session.
+     */
+    protected String token;
+
+    /**
+     * Identifier assigned by the client to a request and echoed in the matching response,
+     * so that several requests can be in flight on one connection. 0 if not assigned.
+     */
+    protected long requestId;
+
+    /**
+     * Time in milliseconds the client is going to wait for the response to a request, counted from the moment
+     * the request is received. The server drops requests whose time is up. 0 if the client waits indefinitely.
+     */
+    protected long timeoutMillis;
+
+    /**
+     * Key chosen by the client for a request of a command changing the collection, kept when the request is sent
+     * again after a lost connection. The server applies a request with a key it has already seen only once
+     * and answers the replay with the first response. Null if the request may be applied any number of times.
+     */
+    protected String idempotencyKey;
+
+    /**
+     * Identifier shared by the requests a client streams on one connection to be executed in order, up to the first
+     * failure: the server skips the requests of a stream sent after one of them has failed. 0 if not streamed.
+     */
+    protected long streamId;
+
     /**
      * Constructs a sendable object with the specified success status, message, and data payload.
      *
@@ -0,0 +1,73 @@
+package ru.itmo.general.network;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Envelope of a response read from a pre-encoded snapshot of the collection.
+ * The server keeps the encoded response to {@code download_snapshot} in a file and sends it as is,
+ * so the identifier of the request it answers is carried in front of it:
+ * the payload is {@link #MARKER}, the request id as 8 bytes, then the encoded response.
+ *
+ * @author zevtos
+ */
+public class SnapshotFrame {
+    /**
+     * First byte of the payload of a snapshot frame.
+     */
+    public static final byte MARKER = (byte) 0xC4;
+
+    /**
+     * Size of the envelope in front of the encoded response.
+     */
+    public static final int HEADER_SIZE = 1 + Long.BYTES;
+
+    private SnapshotFrame() {
+    }
+
+    /**
+     * Builds the frame header and the envelope preceding an encoded response.
+     *
+     * @param requestId      the identifier of the request being answered
+     * @param responseLength the length of the encoded response which follows
+     * @return a buffer ready for writing
+     */
+    public static ByteBuffer header(long requestId, long responseLength) {
+        ByteBuffer header = ByteBuffer.allocate(FrameDecoder.HEADER_SIZE + HEADER_SIZE);
+        header.putInt(Math.toIntExact(HEADER_SIZE + responseLength));
+        header.put(MARKER);
+        header.putLong(requestId);
+        header.flip();
+        return header;
+    }
+
+    /**
+     * Checks whether a payload is a snapshot frame.
+     *
+     * @param payload the frame payload
+     * @return true if it is a snapshot frame
+     */
+    public static boolean isSnapshot(byte[] payload) {
+        return payload.length >= HEADER_SIZE && payload[0] == MARKER;
+    }
+
+    /**
+     * Returns the identifier of the request answered by a snapshot frame.
+     *
+     * @param payload the frame payload
+     * @return the request id
+     */
+    public static long requestIdOf(byte[] payload) {
+        return ByteBuffer.wrap(payload, 1, Long.BYTES).getLong();
+    }
+
+    /**
+     * Returns the encoded response carried by a snapshot frame.
+     *
+     * @param payload the frame payload
+     * @return the encoded response
+     */
+    public static byte[] responseOf(byte[] payload) {
+        return Arrays.copyOfRange(payload, HEADER_SIZE, payload.length);
+    }
+}
@@ -0,0 +1,476 @@
+package ru.itmo.general.network.codec;
+
+import ru.itmo.general.commands.CommandName;
+import ru.itmo.general.models.*;
+import ru.itmo.general.network.Request;
+import ru.itmo.general.network.Response;
+import ru.itmo.general.network.Sendable;
+
+import java.io.*;
+import java.time.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary format for requests, responses and the collection model.
+ * <p>
+ * A message starts with {@link #MAGIC} and a format version, followed by the message kind, a flags byte,
+ * the request id and the header fields. Commands of requests are sent as one-byte opcodes derived from
+ * {@link CommandName}; integers are varints (zigzag-encoded when signed), timestamps are epoch seconds plus
+ * nanoseconds, and zone ids are written once per message and referred to by index afterwards.
+ * The data payload is a tagged value; types the format does not know are embedded using Java serialization.
+ * Requests and responses nested in the data, as in a batch, are written like the message itself, without its magic
+ * and version.
+ *
+ * @author zevtos
+ */
+public class BinaryCodec {
+    /**
+     * First byte of every binary payload. Java serialization streams always start with 0xAC.
+     */
+    public static final byte MAGIC = (byte) 0xB1;
+
+    private static final int VERSION = 1;
+    /**
+     * Version of messages carrying an idempotency key; messages without one keep {@link #VERSION},
+     * so peers that predate the key still read them.
+     */
+    private static final int VERSION_IDEMPOTENCY_KEY = 2;
+    /**
+     * Version of messages belonging to a stream of requests, so that a peer which would execute them regardless
+     * of a failure rejects them instead.
+     */
+    private static final int VERSION_STREAM = 3;
+
+    private static final int KIND_REQUEST = 0;
+    private static final int KIND_RESPONSE = 1;
+
+    private static final int FLAG_SUCCESS = 1;
+    private static final int FLAG_LOGIN = 1 << 1;
+    private static final int FLAG_PASSWORD = 1 << 2;
+    private static final int FLAG_USER_ID = 1 << 3;
+    private static final int FLAG_TOKEN = 1 << 4;
+    private static final int FLAG_TIMEOUT = 1 << 5;
+    private static final int FLAG_IDEMPOTENCY_KEY = 1 << 6;
+    private static final int FLAG_STREAM = 1 << 7;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_FALSE = 1;
+    private static final int TAG_TRUE = 2;
+    private static final int TAG_INT = 3;
+    private static final int TAG_LONG = 4;
+    private static final int TAG_DOUBLE = 5;
+    private static final int TAG_FLOAT = 6;
+    private static final int TAG_STRING = 7;
+    private static final int TAG_LIST = 8;
+    private static final int TAG_ARRAY = 9;
+    private static final int TAG_TICKET = 10;
+    private static final int TAG_COORDINATES = 11;
+    private static final int TAG_PERSON = 12;
+    private static final int TAG_TICKET_TYPE = 13;
+    private static final int TAG_COLOR = 14;
+    private static final int TAG_SERIALIZED = 15;
+    private static final int TAG_MESSAGE = 16;
+
+    private static final int TICKET_COORDINATES = 1;
+    private static final int TICKET_CREATION_DATE = 1 << 1;
+    private static final int TICKET_DISCOUNT = 1 << 2;
+    private static final int TICKET_TYPE = 1 << 3;
+    private static final int TICKET_PERSON = 1 << 4;
+    private static final int TICKET_USER_ID = 1 << 5;
+
+    private static final int PERSON_BIRTHDAY = 1;
+    private static final int PERSON_HEIGHT = 1 << 1;
+    private static final int PERSON_HAIR_COLOR = 1 << 2;
+
+    /**
+     * Opcode 0 means that the command name follows as a string.
+     */
+    private static final int OPCODE_LITERAL = 0;
+    private static final CommandName[] COMMANDS = CommandName.values();
+    private static final Map<String, Integer> OPCODES = new HashMap<>();
+
+    static {
+        for (CommandName commandName : COMMANDS) {
+            OPCODES.put(commandName.name().toLowerCase(), commandName.ordinal() + 1);
+        }
+    }
+
+    private BinaryWriter writer;
+    private BinaryReader reader;
+    private final List<ZoneId> zones = new ArrayList<>();
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * Writes a request or a response in the binary format.
+     *
+     * @param message the message
+     * @param out     the stream receiving the payload
+     * @throws IOException if the message cannot be written
+     */
+    public static void encode(Sendable message, OutputStream out) throws IOException {
+        BinaryCodec codec = new BinaryCodec();
+        codec.writer = new BinaryWriter(out);
+        codec.writeMessage(message);
+    }
+
+    /**
+     * Reads a request or a response from a binary payload.
+     *
+     * @param payload the payload, starting with {@link #MAGIC}
+     * @return the decoded message
+     * @throws IOException if the payload is malformed
+     */
+    public static Sendable decode(byte[] payload) throws IOException {
+        BinaryCodec codec = new BinaryCodec();
+        codec.reader = new BinaryReader(payload, 0);
+        return codec.readMessage();
+    }
+
+    private void writeMessage(Sendable message) throws IOException {
+        writer.writeByte(MAGIC);
+        writer.writeByte(message.getStreamId() != 0 ? VERSION_STREAM
+                : message.getIdempotencyKey() != null ? VERSION_IDEMPOTENCY_KEY : VERSION);
+        writeFields(message);
+    }
+
+    private void writeFields(Sendable message) throws IOException {
+        boolean isRequest = message instanceof Request;
+        writer.writeByte(isRequest ? KIND_REQUEST : KIND_RESPONSE);
+        int flags = (message.isSuccess() ? FLAG_SUCCESS : 0)
+                | (message.getLogin() != null ? FLAG_LOGIN : 0)
+                | (message.getPassword() != null ? FLAG_PASSWORD : 0)
+                | (message.getUserId() != null ? FLAG_USER_ID : 0)
+                | (message.getToken() != null ? FLAG_TOKEN : 0)
+                | (message.getTimeoutMillis() > 0 ? FLAG_TIMEOUT : 0)
+                | (message.getIdempotencyKey() != null ? FLAG_IDEMPOTENCY_KEY : 0)
+                | (message.getStreamId() != 0 ? FLAG_STREAM : 0);
+        writer.writeByte(flags);
+        writer.writeVarLong(message.getRequestId());
+        if (isRequest) {
+            Integer opcode = message.getMessage() == null ? null : OPCODES.get(message.getMessage());
+            if (opcode != null) {
+                writer.writeVarInt(opcode);
+            } else {
+                writer.writeVarInt(OPCODE_LITERAL);
+                writer.writeString(message.getMessage());
+            }
+        } else {
+            writer.writeString(message.getMessage());
+        }
+        if (message.getLogin() != null) writer.writeString(message.getLogin());
+        if (message.getPassword() != null) writer.writeString(message.getPassword());
+        if (message.getUserId() != null) writer.writeSignedVarInt(message.getUserId());
+        if (message.getToken() != null) writer.writeString(message.getToken());
+        if (message.getTimeoutMillis() > 0) writer.writeVarLong(message.getTimeoutMillis());
+        if (message.getIdempotencyKey() != null) writer.writeString(message.getIdempotencyKey());
+        if (message.getStreamId() != 0) writer.writeVarLong(message.getStreamId());
+        writeValue(message.getData());
+    }
+
+    private Sendable readMessage() throws IOException {
+        if ((byte) reader.readByte() != MAGIC) throw new StreamCorruptedException("Not a binary message");
+        int version = reader.readByte();
+        if (version < VERSION || version > VERSION_STREAM) throw new StreamCorruptedException("Unsupported binary format version " + version);
+        return readFields();
+    }
+
+    private Sendable readFields() throws IOException {
+        int kind = reader.readByte();
+        int flags = reader.readByte();
+        long requestId = reader.readVarLong();
+        String message;
+        if (kind == KIND_REQUEST) {
+            int opcode = reader.readVarInt();
+            if (opcode == OPCODE_LITERAL) {
+                message = reader.readString();
+            } else if (opcode <= COMMANDS.length) {
+                message = COMMANDS[opcode - 1].name().toLowerCase();
+            } else {
+                throw new StreamCorruptedException("Unknown opcode " + opcode);
+            }
+        } else if (kind == KIND_RESPONSE) {
+            message = reader.readString();
+        } else {
+            throw new StreamCorruptedException("Unknown message kind " + kind);
+        }
+        String login = (flags & FLAG_LOGIN) != 0 ? reader.readString() : null;
+        String password = (flags & FLAG_PASSWORD) != 0 ? reader.readString() : null;
+        Integer userId = (flags & FLAG_USER_ID) != 0 ? reader.readSignedVarInt() : null;
+        String token = (flags & FLAG_TOKEN) != 0 ? reader.readString() : null;
+        long timeoutMillis = (flags & FLAG_TIMEOUT) != 0 ? reader.readVarLong() : 0;
+        String idempotencyKey = (flags & FLAG_IDEMPOTENCY_KEY) != 0 ? reader.readString() : null;
+        long streamId = (flags & FLAG_STREAM) != 0 ? reader.readVarLong() : 0;
+        Object data = readValue();
+
+        boolean success = (flags & FLAG_SUCCESS) != 0;
+        Sendable result = kind == KIND_REQUEST
+                ? new Request(success, message, data)
+                : new Response(success, message, data);
+        result.setRequestId(requestId);
+        result.setLogin(login);
+        result.setPassword(password);
+        result.setUserId(userId);
+        result.setToken(token);
+        result.setTimeoutMillis(timeoutMillis);
+        result.setIdempotencyKey(idempotencyKey);
+        result.setStreamId(streamId);
+        return result;
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value == null) {
+            writer.writeByte(TAG_NULL);
+        } else if (value instanceof Boolean b) {
+            writer.writeByte(b ? TAG_TRUE : TAG_FALSE);
+        } else if (value instanceof Integer i) {
+            writer.writeByte(TAG_INT);
+            writer.writeSignedVarInt(i);
+        } else if (value instanceof Long l) {
+            writer.writeByte(TAG_LONG);
+            writer.writeSignedVarLong(l);
+        } else if (value instanceof Double d) {
+            writer.writeByte(TAG_DOUBLE);
+            writer.writeDouble(d);
+        } else if (value instanceof Float f) {
+            writer.writeByte(TAG_FLOAT);
+            writer.writeFloat(f);
+        } else if (value instanceof String s) {
+            writer.writeByte(TAG_STRING);
+            writer.writeString(s);
+        } else if (value instanceof Ticket ticket) {
+            writer.writeByte(TAG_TICKET);
+            writeTicket(ticket);
+        } else if (value instanceof Coordinates coordinates) {
+            writer.writeByte(TAG_COORDINATES);
+            writeCoordinates(coordinates);
+        } else if (value instanceof Person person) {
+            writer.writeByte(TAG_PERSON);
+            writePerson(person);
+        } else if (value instanceof TicketType type) {
+            writer.writeByte(TAG_TICKET_TYPE);
+            writer.writeVarInt(type.ordinal());
+        } else if (value instanceof Color color) {
+            writer.writeByte(TAG_COLOR);
+            writer.writeVarInt(color.ordinal());
+        } else if (value instanceof Sendable message) {
+            writer.writeByte(TAG_MESSAGE);
+            writeFields(message);
+        } else if (value instanceof List<?> list) {
+            writer.writeByte(TAG_LIST);
+            writer.writeVarInt(list.size());
+            for (Object element : list) {
+                writeValue(element);
+            }
+        } else if (value instanceof Object[] array) {
+            writer.writeByte(TAG_ARRAY);
+            writer.writeVarInt(array.length);
+            for (Object element : array) {
+                writeValue(element);
+            }
+        } else if (value instanceof Serializable) {
+            writer.writeByte(TAG_SERIALIZED);
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream)) {
+                objectOutputStream.writeObject(value);
+            }
+            writer.writeBytes(byteArrayOutputStream.toByteArray());
+        } else {
+            throw new NotSerializableException(value.getClass().getName());
+        }
+    }
+
+    private Object readValue() throws IOException {
+        int tag = reader.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_FALSE:
+                return false;
+            case TAG_TRUE:
+                return true;
+            case TAG_INT:
+                return reader.readSignedVarInt();
+            case TAG_LONG:
+                return reader.readSignedVarLong();
+            case TAG_DOUBLE:
+                return reader.readDouble();
+            case TAG_FLOAT:
+                return reader.readFloat();
+            case TAG_STRING:
+                return reader.readString();
+            case TAG_TICKET:
+                return readTicket();
+            case TAG_COORDINATES:
+                return readCoordinates();
+            case TAG_PERSON:
+                return readPerson();
+            case TAG_TICKET_TYPE:
+                return readEnum(TicketType.values());
+            case TAG_COLOR:
+                return readEnum(Color.values());
+            case TAG_LIST: {
+                int size = reader.readVarInt();
+                List<Object> list = new ArrayList<>(Math.min(size, 1024));
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue());
+                }
+                return list;
+            }
+            case TAG_ARRAY: {
+                int size = reader.readVarInt();
+                List<Object> elements = new ArrayList<>(Math.min(size, 1024));
+                for (int i = 0; i < size; i++) {
+                    elements.add(readValue());
+                }
+                return elements.toArray();
+            }
+            case TAG_MESSAGE:
+                return readFields();
+            case TAG_SERIALIZED:
+                try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(reader.readBytes()))) {
+                    return objectInputStream.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new InvalidObjectException(e.getMessage());
+                }
+            default:
+                throw new StreamCorruptedException("Unknown value tag " + tag);
+        }
+    }
+
+    private void writeTicket(Ticket ticket) throws IOException {
+        int fields = (ticket.getCoordinates() != null ? TICKET_COORDINATES : 0)
+                | (ticket.getCreationDate() != null ? TICKET_CREATION_DATE : 0)
+                | (ticket.getDiscount() != null ? TICKET_DISCOUNT : 0)
+                | (ticket.getType() != null ? TICKET_TYPE : 0)
+                | (ticket.getPerson() != null ? TICKET_PERSON : 0)
+                | (ticket.getUserId() != null ? TICKET_USER_ID : 0);
+        writer.writeVarInt(fields);
+        writer.writeBoolean(ticket.hasId());
+        if (ticket.hasId()) writer.writeSignedVarInt(ticket.getId());
+        writer.writeString(ticket.getName());
+        if (ticket.getCoordinates() != null) writeCoordinates(ticket.getCoordinates());
+        if (ticket.getCreationDate() != null) writeZonedDateTime(ticket.getCreationDate());
+        writer.writeDouble(ticket.getPrice());
+        if (ticket.getDiscount() != null) writer.writeSignedVarLong(ticket.getDiscount());
+        writer.writeString(ticket.getComment());
+        if (ticket.getType() != null) writer.writeVarInt(ticket.getType().ordinal());
+        if (ticket.getPerson() != null) writePerson(ticket.getPerson());
+        if (ticket.getUserId() != null) writer.writeSignedVarInt(ticket.getUserId());
+    }
+
+    private Ticket readTicket() throws IOException {
+        int fields = reader.readVarInt();
+        Integer id = reader.readBoolean() ? reader.readSignedVarInt() : null;
+        String name = reader.readString();
+        Coordinates coordinates = (fields & TICKET_COORDINATES) != 0 ? readCoordinates() : null;
+        ZonedDateTime creationDate = (fields & TICKET_CREATION_DATE) != 0 ? readZonedDateTime() : null;
+        double price = reader.readDouble();
+        Long discount = (fields & TICKET_DISCOUNT) != 0 ? reader.readSignedVarLong() : null;
+        String comment = reader.readString();
+        TicketType type = (fields & TICKET_TYPE) != 0 ? readEnum(TicketType.values()) : null;
+        Person person = (fields & TICKET_PERSON) != 0 ? readPerson() : null;
+        Ticket ticket = new Ticket(id, name, coordinates, creationDate, price, discount, comment, type, person);
+        if ((fields & TICKET_USER_ID) != 0) ticket.setUserId(reader.readSignedVarInt());
+        return ticket;
+    }
+
+    private void writeCoordinates(Coordinates coordinates) throws IOException {
+        writer.writeDouble(coordinates.x());
+        writer.writeBoolean(coordinates.y() != null);
+        if (coordinates.y() != null) writer.writeFloat(coordinates.y());
+    }
+
+    private Coordinates readCoordinates() throws IOException {
+        double x = reader.readDouble();
+        Float y = reader.readBoolean() ? reader.readFloat() : null;
+        return new Coordinates(x, y);
+    }
+
+    private void writePerson(Person person) throws IOException {
+        int fields = (person.birthday() != null ? PERSON_BIRTHDAY : 0)
+                | (person.height() != null ? PERSON_HEIGHT : 0)
+                | (person.hairColor() != null ? PERSON_HAIR_COLOR : 0);
+        writer.writeByte(fields);
+        if (person.birthday() != null) writeLocalDateTime(person.birthday());
+        if (person.height() != null) writer.writeFloat(person.height());
+        writer.writeString(person.passportID());
+        if (person.hairColor() != null) writer.writeVarInt(person.hairColor().ordinal());
+    }
+
+    private Person readPerson() throws IOException {
+        int fields = reader.readByte();
+        LocalDateTime birthday = (fields & PERSON_BIRTHDAY) != 0 ? readLocalDateTime() : null;
+        Float height = (fields & PERSON_HEIGHT) != 0 ? reader.readFloat() : null;
+        String passportID = reader.readString();
+        Color hairColor = (fields & PERSON_HAIR_COLOR) != 0 ? readEnum(Color.values()) : null;
+        return new Person(birthday, height, passportID, hairColor);
+    }
+
+    private void writeLocalDateTime(LocalDateTime dateTime) throws IOException {
+        writer.writeSignedVarLong(dateTime.toEpochSecond(ZoneOffset.UTC));
+        writer.writeVarInt(dateTime.getNano());
+    }
+
+    private LocalDateTime readLocalDateTime() throws IOException {
+        long epochSecond = reader.readSignedVarLong();
+        try {
+            return LocalDateTime.ofEpochSecond(epochSecond, readNano(), ZoneOffset.UTC);
+        } catch (DateTimeException e) {
+            throw new StreamCorruptedException("Invalid timestamp");
+        }
+    }
+
+    private void writeZonedDateTime(ZonedDateTime dateTime) throws IOException {
+        writer.writeSignedVarLong(dateTime.toEpochSecond());
+        writer.writeVarInt(dateTime.getNano());
+        int zoneIndex = zones.indexOf(dateTime.getZone());
+        if (zoneIndex >= 0) {
+            writer.writeVarInt(zoneIndex + 1);
+        } else {
+            zones.add(dateTime.getZone());
+            writer.writeVarInt(0);
+            writer.writeString(dateTime.getZone().getId());
+        }
+    }
+
+    private ZonedDateTime readZonedDateTime() throws IOException {
+        long epochSecond = reader.readSignedVarLong();
+        int nano = readNano();
+        int zoneIndex = reader.readVarInt();
+        ZoneId zone;
+        if (zoneIndex == 0) {
+            try {
+                zone = ZoneId.of(reader.readString());
+            } catch (DateTimeException | NullPointerException e) {
+                throw new StreamCorruptedException("Invalid zone id");
+            }
+            zones.add(zone);
+        } else if (zoneIndex <= zones.size()) {
+            zone = zones.get(zoneIndex - 1);
+        } else {
+            throw new StreamCorruptedException("Unknown zone reference " + zoneIndex);
+        }
+        try {
+            return ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSecond, nano), zone);
+        } catch (DateTimeException e) {
+            throw new StreamCorruptedException("Invalid timestamp");
+        }
+    }
+
+    private int readNano() throws IOException {
+        int nano = reader.readVarInt();
+        if (nano < 0 || nano > 999_999_999) throw new StreamCorruptedException("Invalid nanosecond value");
+        return nano;
+    }
+
+    private <E extends Enum<E>> E readEnum(E[] values) throws IOException {
+        int ordinal = reader.readVarInt();
+        if (ordinal < 0 || ordinal >= values.length) throw new StreamCorruptedException("Unknown enum ordinal " + ordinal);
+        return values[ordinal];
+    }
+}
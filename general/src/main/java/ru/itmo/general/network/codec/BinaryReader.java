@@ -0,0 +1,103 @@
+package ru.itmo.general.network.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the primitives written by {@link BinaryWriter} from a payload.
+ *
+ * @author zevtos
+ */
+class BinaryReader {
+    private final byte[] bytes;
+    private int position;
+
+    /**
+     * Constructs a reader over a payload.
+     *
+     * @param bytes    the payload
+     * @param position the offset of the first byte to read
+     */
+    BinaryReader(byte[] bytes, int position) {
+        this.bytes = bytes;
+        this.position = position;
+    }
+
+    int position() {
+        return position;
+    }
+
+    int readByte() throws IOException {
+        if (position >= bytes.length) throw new EOFException("Unexpected end of message");
+        return bytes[position++] & 0xFF;
+    }
+
+    boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+
+    int readVarInt() throws IOException {
+        long value = readVarLong();
+        if (value >>> 32 != 0) throw new StreamCorruptedException("Malformed varint");
+        return (int) value;
+    }
+
+    long readSignedVarLong() throws IOException {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    int readSignedVarInt() throws IOException {
+        return (int) readSignedVarLong();
+    }
+
+    double readDouble() throws IOException {
+        long bits = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            bits = (bits << 8) | readByte();
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    float readFloat() throws IOException {
+        int bits = 0;
+        for (int i = 0; i < Integer.BYTES; i++) {
+            bits = (bits << 8) | readByte();
+        }
+        return Float.intBitsToFloat(bits);
+    }
+
+    byte[] readBytes() throws IOException {
+        int length = readVarInt();
+        byte[] result = new byte[checkLength(length)];
+        System.arraycopy(bytes, position, result, 0, length);
+        position += length;
+        return result;
+    }
+
+    String readString() throws IOException {
+        int length = readVarInt();
+        if (length == 0) return null;
+        length = checkLength(length - 1);
+        String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    private int checkLength(int length) throws IOException {
+        if (length < 0 || length > bytes.length - position) throw new EOFException("Unexpected end of message");
+        return length;
+    }
+}
@@ -0,0 +1,89 @@
+package ru.itmo.general.network.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the primitives of the binary wire format: varints, fixed-width numbers and length-prefixed strings.
+ *
+ * @author zevtos
+ */
+class BinaryWriter {
+    private final OutputStream out;
+
+    /**
+     * Constructs a writer over a stream.
+     *
+     * @param out the stream receiving the bytes
+     */
+    BinaryWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    void writeByte(int value) throws IOException {
+        out.write(value);
+    }
+
+    void writeBoolean(boolean value) throws IOException {
+        out.write(value ? 1 : 0);
+    }
+
+    /**
+     * Writes an unsigned variable-length integer, 7 bits per byte with the high bit marking continuation.
+     */
+    void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    void writeVarInt(int value) throws IOException {
+        writeVarLong(value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Writes a signed integer so that values of small magnitude take few bytes.
+     */
+    void writeSignedVarLong(long value) throws IOException {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    void writeSignedVarInt(int value) throws IOException {
+        writeSignedVarLong(value);
+    }
+
+    void writeDouble(double value) throws IOException {
+        long bits = Double.doubleToLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (bits >>> shift));
+        }
+    }
+
+    void writeFloat(float value) throws IOException {
+        int bits = Float.floatToIntBits(value);
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            out.write(bits >>> shift);
+        }
+    }
+
+    void writeBytes(byte[] bytes) throws IOException {
+        writeVarInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes a UTF-8 string prefixed with its length plus one, so that 0 stands for null.
+     */
+    void writeString(String value) throws IOException {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length + 1);
+        out.write(bytes);
+    }
+}
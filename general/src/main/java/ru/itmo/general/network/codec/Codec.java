@@ -0,0 +1,106 @@
+package ru.itmo.general.network.codec;
+
+import ru.itmo.general.network.Sendable;
+
+import java.io.*;
+
+/**
+ * Wire formats for the messages carried in frame payloads.
+ * The format of a payload is recognized by its first byte, so both sides can always decode
+ * whatever they receive, and the server answers every request in the format it was sent in.
+ *
+ * @author zevtos
+ */
+public enum Codec {
+    /**
+     * The hand-written compact format of {@link BinaryCodec}.
+     */
+    BINARY {
+        @Override
+        public void encode(Sendable message, OutputStream out) throws IOException {
+            BinaryCodec.encode(message, out);
+        }
+
+        @Override
+        public Sendable decode(byte[] payload) throws IOException {
+            return BinaryCodec.decode(payload);
+        }
+    },
+
+    /**
+     * Standard Java serialization, kept as a fallback mode.
+     */
+    SERIALIZATION {
+        @Override
+        public void encode(Sendable message, OutputStream out) throws IOException {
+            ObjectOutputStream objectOutputStream = new ObjectOutputStream(out);
+            objectOutputStream.writeObject(message);
+            objectOutputStream.flush();
+        }
+
+        @Override
+        public Sendable decode(byte[] payload) throws IOException {
+            try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+                return (Sendable) objectInputStream.readObject();
+            } catch (ClassNotFoundException | ClassCastException e) {
+                throw new InvalidObjectException(e.getMessage());
+            }
+        }
+    };
+
+    /**
+     * Writes a message to a stream.
+     *
+     * @param message the request or response
+     * @param out     the stream receiving the payload
+     * @throws IOException if the message cannot be written
+     */
+    public abstract void encode(Sendable message, OutputStream out) throws IOException;
+
+    /**
+     * Reads a message from a frame payload.
+     *
+     * @param payload the frame payload
+     * @return the decoded request or response
+     * @throws IOException if the payload is malformed
+     */
+    public abstract Sendable decode(byte[] payload) throws IOException;
+
+    /**
+     * Encodes a message into a byte array.
+     *
+     * @param message the request or response
+     * @return the payload
+     * @throws IOException if the message cannot be written
+     */
+    public byte[] encode(Sendable message) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        encode(message, byteArrayOutputStream);
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    /**
+     * Recognizes the format of a payload.
+     *
+     * @param payload the frame payload
+     * @return the codec able to decode it
+     */
+    public static Codec of(byte[] payload) {
+        return payload.length > 0 && payload[0] == BinaryCodec.MAGIC ? BINARY : SERIALIZATION;
+    }
+
+    /**
+     * Looks a codec up by name, ignoring case.
+     *
+     * @param name         the codec name, e.g. {@code binary}
+     * @param defaultCodec the codec used if the name is null or unknown
+     * @return the codec
+     */
+    public static Codec byName(String name, Codec defaultCodec) {
+        if (name == null) return defaultCodec;
+        for (Codec codec : values()) {
+            if (codec.name().equalsIgnoreCase(name)) return codec;
+        }
+        return defaultCodec;
+    }
+}
@@ -0,0 +1,186 @@
+package ru.itmo.general.network.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Negotiation and envelope format of payload compression.
+ * <p>
+ * The algorithm is chosen by the {@link ru.itmo.general.network.Handshake} of the connection. Clients that predate
+ * the handshake send an offer frame instead: {@link #OFFER} followed by the number of algorithms and their ids
+ * in order of preference. The server picks the first algorithm it knows and from then on may compress large
+ * responses on that connection. A compressed payload is
+ * {@link #COMPRESSED}, the algorithm id, the original length as a varint and the compressed bytes;
+ * the marker bytes never start a message of any {@link Codec}, so both kinds of payloads can be told apart.
+ *
+ * @author zevtos
+ */
+public class Compression {
+    /**
+     * First byte of a compression offer.
+     */
+    public static final byte OFFER = (byte) 0xC0;
+
+    /**
+     * First byte of a compressed payload.
+     */
+    public static final byte COMPRESSED = (byte) 0xC1;
+
+    /**
+     * Upper bound for the restored size of a compressed payload.
+     */
+    private static final int MAX_ORIGINAL_LENGTH = 64 * 1024 * 1024;
+
+    private static final Map<Integer, Supplier<PayloadCompressor>> algorithms = new LinkedHashMap<>();
+
+    static {
+        register(DeflateCompressor.ID, DeflateCompressor::new);
+    }
+
+    private Compression() {
+    }
+
+    /**
+     * Makes an algorithm available for negotiation.
+     *
+     * @param id      the identifier of the algorithm on the wire
+     * @param factory creates a compressor for a single connection
+     */
+    public static synchronized void register(int id, Supplier<PayloadCompressor> factory) {
+        algorithms.put(id, factory);
+    }
+
+    /**
+     * Builds the offer frame payload listing every registered algorithm.
+     *
+     * @return the offer payload
+     */
+    public static synchronized byte[] offer() {
+        byte[] offer = new byte[2 + algorithms.size()];
+        offer[0] = OFFER;
+        offer[1] = (byte) algorithms.size();
+        int i = 2;
+        for (int id : algorithms.keySet()) {
+            offer[i++] = (byte) id;
+        }
+        return offer;
+    }
+
+    /**
+     * Checks whether a payload is a compression offer.
+     *
+     * @param payload the frame payload
+     * @return true if it is an offer
+     */
+    public static boolean isOffer(byte[] payload) {
+        return payload.length > 0 && payload[0] == OFFER;
+    }
+
+    /**
+     * Picks the first offered algorithm that is registered.
+     *
+     * @param offer the offer payload
+     * @return a fresh compressor, or null if none of the offered algorithms is known
+     */
+    public static synchronized PayloadCompressor accept(byte[] offer) {
+        int count = offer.length > 1 ? offer[1] & 0xFF : 0;
+        for (int i = 0; i < count && 2 + i < offer.length; i++) {
+            Supplier<PayloadCompressor> factory = algorithms.get(offer[2 + i] & 0xFF);
+            if (factory != null) return factory.get();
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether an algorithm is registered.
+     *
+     * @param id the identifier of the algorithm
+     * @return true if payloads can be compressed and decompressed with the algorithm
+     */
+    public static synchronized boolean isSupported(int id) {
+        return algorithms.containsKey(id);
+    }
+
+    /**
+     * Returns the identifiers of the registered algorithms, in order of preference.
+     *
+     * @return the identifiers
+     */
+    public static synchronized int[] supported() {
+        return algorithms.keySet().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Creates a compressor for an algorithm.
+     *
+     * @param id the identifier of the algorithm
+     * @return a fresh compressor, or null if the algorithm is not registered
+     */
+    public static synchronized PayloadCompressor create(int id) {
+        Supplier<PayloadCompressor> factory = algorithms.get(id);
+        return factory == null ? null : factory.get();
+    }
+
+    /**
+     * Checks whether a payload is compressed.
+     *
+     * @param payload the frame payload
+     * @return true if the payload has to be decompressed before decoding
+     */
+    public static boolean isCompressed(byte[] payload) {
+        return payload.length > 0 && payload[0] == COMPRESSED;
+    }
+
+    /**
+     * Returns the id of the algorithm a payload was compressed with.
+     *
+     * @param payload the compressed envelope
+     * @return the algorithm id
+     */
+    public static int algorithmOf(byte[] payload) {
+        return payload.length > 1 ? payload[1] & 0xFF : -1;
+    }
+
+    /**
+     * Writes the remaining bytes of a payload as a compressed envelope.
+     *
+     * @param payload    the encoded message
+     * @param compressor the compressor of the connection
+     * @param out        the stream receiving the envelope
+     * @throws IOException if the envelope cannot be written
+     */
+    public static void compress(ByteBuffer payload, PayloadCompressor compressor, OutputStream out) throws IOException {
+        BinaryWriter writer = new BinaryWriter(out);
+        writer.writeByte(COMPRESSED);
+        writer.writeByte(compressor.id());
+        writer.writeVarInt(payload.remaining());
+        compressor.compress(payload, out);
+    }
+
+    /**
+     * Restores the payload held in a compressed envelope.
+     *
+     * @param payload    the envelope
+     * @param compressor the compressor of the connection
+     * @return the original payload
+     * @throws IOException if the envelope is malformed or uses another algorithm
+     */
+    public static byte[] decompress(byte[] payload, PayloadCompressor compressor) throws IOException {
+        BinaryReader reader = new BinaryReader(payload, 1);
+        int id = reader.readByte();
+        if (compressor == null || compressor.id() != id) {
+            throw new StreamCorruptedException("Payload compressed with unexpected algorithm " + id);
+        }
+        int originalLength = reader.readVarInt();
+        if (originalLength < 0 || originalLength > MAX_ORIGINAL_LENGTH) {
+            throw new StreamCorruptedException("Compressed payload too large: " + originalLength);
+        }
+        int offset = reader.position();
+        return compressor.decompress(payload, offset, payload.length - offset, originalLength);
+    }
+}
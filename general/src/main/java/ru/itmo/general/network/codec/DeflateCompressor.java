@@ -0,0 +1,72 @@
+package ru.itmo.general.network.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate compression from the JDK. The deflater, the inflater and the output chunk are reused
+ * for every message of the connection.
+ *
+ * @author zevtos
+ */
+public class DeflateCompressor implements PayloadCompressor {
+    /**
+     * Identifier of the algorithm on the wire.
+     */
+    public static final int ID = 1;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    private final Inflater inflater = new Inflater(true);
+    private final byte[] chunk = new byte[16 * 1024];
+    private boolean closed;
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public synchronized void compress(ByteBuffer payload, OutputStream out) throws IOException {
+        if (closed) throw new IOException("Compressor closed");
+        deflater.reset();
+        deflater.setInput(payload);
+        deflater.finish();
+        while (!deflater.finished()) {
+            int length = deflater.deflate(chunk);
+            out.write(chunk, 0, length);
+        }
+    }
+
+    @Override
+    public synchronized byte[] decompress(byte[] data, int offset, int length, int originalLength) throws IOException {
+        if (closed) throw new IOException("Compressor closed");
+        inflater.reset();
+        inflater.setInput(data, offset, length);
+        byte[] result = new byte[originalLength];
+        int restored = 0;
+        try {
+            while (restored < originalLength && !inflater.finished()) {
+                int count = inflater.inflate(result, restored, originalLength - restored);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                restored += count;
+            }
+        } catch (DataFormatException e) {
+            throw new StreamCorruptedException("Corrupted compressed payload: " + e.getMessage());
+        }
+        if (restored != originalLength) throw new StreamCorruptedException("Corrupted compressed payload");
+        return result;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        deflater.end();
+        inflater.end();
+    }
+}
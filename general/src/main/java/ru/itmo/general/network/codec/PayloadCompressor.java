@@ -0,0 +1,47 @@
+package ru.itmo.general.network.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A compression algorithm applied to frame payloads.
+ * An instance belongs to a single connection and may keep its buffers between messages.
+ *
+ * @author zevtos
+ */
+public interface PayloadCompressor {
+
+    /**
+     * Returns the identifier of the algorithm on the wire.
+     *
+     * @return the algorithm id
+     */
+    int id();
+
+    /**
+     * Compresses the remaining bytes of a buffer.
+     *
+     * @param payload the data to compress; its position is moved to the limit
+     * @param out     the stream receiving the compressed data
+     * @throws IOException if the data cannot be written
+     */
+    void compress(ByteBuffer payload, OutputStream out) throws IOException;
+
+    /**
+     * Restores compressed data.
+     *
+     * @param data           the array holding the compressed data
+     * @param offset         the offset of the compressed data
+     * @param length         the length of the compressed data
+     * @param originalLength the length of the data before compression
+     * @return the restored data
+     * @throws IOException if the data is corrupted
+     */
+    byte[] decompress(byte[] data, int offset, int length, int originalLength) throws IOException;
+
+    /**
+     * Releases the resources held by the compressor.
+     */
+    void close();
+}
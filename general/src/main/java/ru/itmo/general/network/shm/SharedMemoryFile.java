@@ -0,0 +1,117 @@
+package ru.itmo.general.network.shm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * A memory-mapped file shared by a client and a server on the same host, holding two {@link SharedMemoryRing}s:
+ * one for the requests of the client and one for the responses of the server.
+ * The file is created by the client, readable and writable by its owner only, and opened by the server
+ * once the client asks it to over the socket.
+ *
+ * @author zevtos
+ */
+public class SharedMemoryFile {
+    /**
+     * Largest capacity of a ring accepted by the server.
+     */
+    public static final int MAX_RING_CAPACITY = 64 * 1024 * 1024;
+
+    private static final int MAGIC = 0x53484D31; // "SHM1"
+    private static final int HEADER_SIZE = 64;
+    private final Path path;
+    private final SharedMemoryRing requests;
+    private final SharedMemoryRing responses;
+
+    private SharedMemoryFile(Path path, MappedByteBuffer mapping, int ringCapacity) {
+        this.path = path;
+        int ringSize = SharedMemoryRing.HEADER_SIZE + ringCapacity;
+        this.requests = new SharedMemoryRing(mapping.slice(HEADER_SIZE, ringSize), ringCapacity);
+        this.responses = new SharedMemoryRing(mapping.slice(HEADER_SIZE + ringSize, ringSize), ringCapacity);
+    }
+
+    /**
+     * Creates and maps a new file. An existing file at the same path is replaced.
+     *
+     * @param path         the path of the file
+     * @param ringCapacity the capacity of each ring, rounded up to a power of two
+     * @return the mapped file
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public static SharedMemoryFile create(Path path, int ringCapacity) throws IOException {
+        int capacity = Integer.highestOneBit(Math.max(1, ringCapacity - 1)) << 1;
+        if (capacity > MAX_RING_CAPACITY) throw new IllegalArgumentException("Ring capacity is too large: " + ringCapacity);
+        Files.deleteIfExists(path);
+        try {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(path);
+        }
+        MappedByteBuffer mapping;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, sizeOf(capacity));
+        }
+        mapping.putInt(4, capacity);
+        mapping.putInt(0, MAGIC);
+        return new SharedMemoryFile(path, mapping, capacity);
+    }
+
+    /**
+     * Maps a file created by {@link #create}.
+     *
+     * @param path the path of the file
+     * @return the mapped file
+     * @throws IOException if the file cannot be mapped or is not a valid shared memory file
+     */
+    public static SharedMemoryFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) throw new IOException("Not a shared memory file: " + path);
+            ByteBuffer header = ByteBuffer.allocate(8);
+            channel.read(header, 0);
+            int capacity = header.getInt(4);
+            if (header.getInt(0) != MAGIC || capacity <= 0 || capacity > MAX_RING_CAPACITY
+                    || Integer.bitCount(capacity) != 1 || size != sizeOf(capacity)) {
+                throw new IOException("Not a shared memory file: " + path);
+            }
+            return new SharedMemoryFile(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size), capacity);
+        }
+    }
+
+    private static long sizeOf(int ringCapacity) {
+        return HEADER_SIZE + 2L * (SharedMemoryRing.HEADER_SIZE + ringCapacity);
+    }
+
+    /**
+     * Returns the path of the file.
+     *
+     * @return the path
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the ring carrying the frames sent by the client.
+     *
+     * @return the request ring
+     */
+    public SharedMemoryRing requests() {
+        return requests;
+    }
+
+    /**
+     * Returns the ring carrying the frames sent by the server.
+     *
+     * @return the response ring
+     */
+    public SharedMemoryRing responses() {
+        return responses;
+    }
+}
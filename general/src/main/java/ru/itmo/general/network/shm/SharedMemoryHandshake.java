@@ -0,0 +1,91 @@
+package ru.itmo.general.network.shm;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Control frames switching a connection to a {@link SharedMemoryFile}.
+ * The client sends an attach frame with the path of the file over the socket; the server answers over the socket
+ * with an attached frame telling whether it accepted. From then on every frame in both directions goes through
+ * the rings of the file, and the socket only tells each side that the other one is still alive.
+ *
+ * @author zevtos
+ */
+public class SharedMemoryHandshake {
+    /**
+     * First byte of an attach frame, followed by the path of the file in UTF-8.
+     */
+    public static final byte ATTACH = (byte) 0xC5;
+
+    /**
+     * First byte of an attached frame, followed by 1 if the server uses the file and 0 if it refused.
+     */
+    public static final byte ATTACHED = (byte) 0xC6;
+
+    private SharedMemoryHandshake() {
+    }
+
+    /**
+     * Builds the payload of an attach frame.
+     *
+     * @param path the path of the shared memory file
+     * @return the payload
+     */
+    public static byte[] attach(Path path) {
+        byte[] encodedPath = path.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[1 + encodedPath.length];
+        payload[0] = ATTACH;
+        System.arraycopy(encodedPath, 0, payload, 1, encodedPath.length);
+        return payload;
+    }
+
+    /**
+     * Builds the payload of an attached frame.
+     *
+     * @param accepted whether the server uses the file
+     * @return the payload
+     */
+    public static byte[] attached(boolean accepted) {
+        return new byte[]{ATTACHED, (byte) (accepted ? 1 : 0)};
+    }
+
+    /**
+     * Checks whether a payload is an attach frame.
+     *
+     * @param payload the frame payload
+     * @return true if it is an attach frame
+     */
+    public static boolean isAttach(byte[] payload) {
+        return payload.length > 1 && payload[0] == ATTACH;
+    }
+
+    /**
+     * Checks whether a payload is an attached frame.
+     *
+     * @param payload the frame payload
+     * @return true if it is an attached frame
+     */
+    public static boolean isAttached(byte[] payload) {
+        return payload.length == 2 && payload[0] == ATTACHED;
+    }
+
+    /**
+     * Returns the path carried by an attach frame.
+     *
+     * @param payload the payload of an attach frame
+     * @return the path of the shared memory file
+     */
+    public static Path pathOf(byte[] payload) {
+        return Path.of(new String(payload, 1, payload.length - 1, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tells whether an attached frame reports that the server accepted the file.
+     *
+     * @param payload the payload of an attached frame
+     * @return true if the server uses the file
+     */
+    public static boolean isAccepted(byte[] payload) {
+        return payload[1] == 1;
+    }
+}
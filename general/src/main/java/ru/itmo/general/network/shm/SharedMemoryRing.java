@@ -0,0 +1,131 @@
+package ru.itmo.general.network.shm;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ByteChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single-producer, single-consumer byte pipe in a region of shared memory.
+ * The region starts with two sequence counters, each on its own cache line: the total number of bytes written
+ * by the producer and the total number of bytes read by the consumer. The rest of the region is the data,
+ * used circularly. Each side only writes its own counter, publishing it with release semantics after the data,
+ * and reads the counter of the other side with acquire semantics, so no locks are needed, even across processes.
+ * <p>
+ * Like a non-blocking socket the ring accepts and returns as many bytes as it can, so frames are carried in it
+ * the same way as over TCP. When there is nothing to do, a side waits with {@link #idle(int)}:
+ * it spins and yields for a while and then parks for growing periods, since a process cannot wake a thread
+ * of another one.
+ *
+ * @author zevtos
+ */
+public class SharedMemoryRing implements ByteChannel {
+    /**
+     * Size of the counters in front of the data.
+     */
+    public static final int HEADER_SIZE = 128;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final int WRITTEN_OFFSET = 0;
+    private static final int READ_OFFSET = 64;
+    // На одном процессоре ожидание вращением только отнимает время у другой стороны кольца
+    private static final int SPIN_ROUNDS = Runtime.getRuntime().availableProcessors() > 1 ? 10000 : 0;
+    private static final int YIELD_ROUNDS = 2000;
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final ByteBuffer region;
+    private final ByteBuffer data;
+    private final int mask;
+
+    /**
+     * Wraps a region of shared memory holding a ring.
+     *
+     * @param region   the region, starting with the counters; its position and limit are ignored
+     * @param capacity the size of the data, a power of two
+     */
+    SharedMemoryRing(ByteBuffer region, int capacity) {
+        this.region = region;
+        this.data = region.slice(HEADER_SIZE, capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Waits a little while a side of a ring has nothing to do: spins first, then yields the processor,
+     * then parks for growing periods.
+     *
+     * @param round the number of consecutive rounds without progress, starting at 0
+     */
+    public static void idle(int round) {
+        if (round < SPIN_ROUNDS) {
+            Thread.onSpinWait();
+        } else if (round < SPIN_ROUNDS + YIELD_ROUNDS) {
+            Thread.yield();
+        } else {
+            int shift = Math.min(round - SPIN_ROUNDS - YIELD_ROUNDS, 6);
+            LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, MIN_PARK_NANOS << shift));
+        }
+    }
+
+    /**
+     * Copies as many bytes as there is free space for into the ring. Must only be called by the producer.
+     *
+     * @param source the bytes to write
+     * @return the number of bytes written, 0 if the ring is full
+     */
+    @Override
+    public int write(ByteBuffer source) {
+        long written = (long) LONGS.getOpaque(region, WRITTEN_OFFSET);
+        long read = (long) LONGS.getAcquire(region, READ_OFFSET);
+        int count = (int) Math.min(source.remaining(), data.capacity() - (written - read));
+        if (count <= 0) return 0;
+        int index = (int) (written & mask);
+        int first = Math.min(count, data.capacity() - index);
+        data.put(index, source, source.position(), first);
+        data.put(0, source, source.position() + first, count - first);
+        source.position(source.position() + count);
+        LONGS.setRelease(region, WRITTEN_OFFSET, written + count);
+        return count;
+    }
+
+    /**
+     * Copies as many available bytes as fit into the destination. Must only be called by the consumer.
+     *
+     * @param destination the buffer to fill
+     * @return the number of bytes read, 0 if the ring is empty
+     */
+    @Override
+    public int read(ByteBuffer destination) {
+        long read = (long) LONGS.getOpaque(region, READ_OFFSET);
+        long written = (long) LONGS.getAcquire(region, WRITTEN_OFFSET);
+        int count = (int) Math.min(destination.remaining(), written - read);
+        if (count <= 0) return 0;
+        int index = (int) (read & mask);
+        int first = Math.min(count, data.capacity() - index);
+        destination.put(destination.position(), data, index, first);
+        destination.put(destination.position() + first, data, 0, count - first);
+        destination.position(destination.position() + count);
+        LONGS.setRelease(region, READ_OFFSET, read + count);
+        return count;
+    }
+
+    /**
+     * The ring lives as long as its mapping, so it is always open.
+     *
+     * @return true
+     */
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    /**
+     * Does nothing: the memory is released when the mapping is no longer referenced.
+     */
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,34 @@
+package ru.itmo.general.utility.base;
+
+import java.util.Collection;
+
+/**
+ * The {@code Journaled} interface represents objects that keep a numbered journal of their recent changes,
+ * so that a client which has seen the changes up to some number can ask for the rest only.
+ *
+ * @author zevtos
+ */
+public interface Journaled {
+
+    /**
+     * Returns the epoch of the journal. Numbers of changes are only comparable within one epoch.
+     *
+     * @return the epoch
+     */
+    long epoch();
+
+    /**
+     * Returns the number of the last change, 0 if nothing has changed yet.
+     *
+     * @return the number of the last change
+     */
+    long lastSequence();
+
+    /**
+     * Returns the IDs of the elements changed after the given change.
+     *
+     * @param sequence the number of the last change already seen
+     * @return the IDs of the changed elements, or null if the journal no longer holds all the changes since then
+     */
+    Collection<Integer> changedSince(long sequence);
+}
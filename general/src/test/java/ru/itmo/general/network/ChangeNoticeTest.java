@@ -0,0 +1,45 @@
+package ru.itmo.general.network;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ChangeNotice}.
+ */
+public class ChangeNoticeTest {
+
+    @Test
+    public void roundTripsFullDatagram() {
+        List<ChangeNotice> notices = new ArrayList<>();
+        for (int i = 0; i < ChangeNotice.MAX_NOTICES; i++) {
+            ChangeNotice.Operation operation = ChangeNotice.Operation.values()[i % 3];
+            notices.add(new ChangeNotice(100 + i, 7, operation, i * 31));
+        }
+        ByteBuffer datagram = ByteBuffer.allocate(ChangeNotice.MAX_DATAGRAM_SIZE);
+
+        ChangeNotice.write(datagram, 42L, 100 + notices.size() - 1, notices);
+        datagram.flip();
+        ChangeNotice.Batch batch = ChangeNotice.read(datagram);
+
+        assertNotNull(batch);
+        assertEquals(42L, batch.epoch());
+        assertEquals(100 + notices.size() - 1, batch.lastSequence());
+        assertEquals(notices, batch.notices());
+    }
+
+    @Test
+    public void rejectsForeignAndTruncatedDatagrams() {
+        assertNull(ChangeNotice.read(ByteBuffer.wrap(new byte[]{1, 2, 3})));
+
+        ByteBuffer datagram = ByteBuffer.allocate(ChangeNotice.MAX_DATAGRAM_SIZE);
+        ChangeNotice.write(datagram, 1L, 5L, List.of(new ChangeNotice(5, 3, ChangeNotice.Operation.REMOVE, 9)));
+        datagram.flip();
+        datagram.limit(datagram.limit() - 1);
+        assertNull(ChangeNotice.read(datagram));
+    }
+}
@@ -0,0 +1,49 @@
+package ru.itmo.general.network;
+
+import org.junit.Test;
+
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link FrameDecoder}.
+ */
+public class FrameDecoderTest {
+
+    @Test
+    public void decodesFrameSplitAcrossReads() throws StreamCorruptedException {
+        FrameDecoder decoder = new FrameDecoder();
+        ByteBuffer frame = FrameEncoder.encode(new byte[]{1, 2, 3, 4, 5});
+        for (int i = 0; i < frame.limit(); i++) {
+            assertFalse(decoder.hasFrame());
+            decoder.feed(ByteBuffer.wrap(new byte[]{frame.get(i)}));
+        }
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, decoder.poll());
+        assertNull(decoder.poll());
+    }
+
+    @Test
+    public void separatesBackToBackFrames() throws StreamCorruptedException {
+        FrameDecoder decoder = new FrameDecoder();
+        ByteBuffer first = FrameEncoder.encode(new byte[]{1});
+        ByteBuffer empty = FrameEncoder.encode(new byte[0]);
+        ByteBuffer second = FrameEncoder.encode(new byte[]{2, 3});
+        ByteBuffer glued = ByteBuffer.allocate(first.remaining() + empty.remaining() + second.remaining());
+        glued.put(first).put(empty).put(second).flip();
+
+        decoder.feed(glued);
+
+        assertArrayEquals(new byte[]{1}, decoder.poll());
+        assertArrayEquals(new byte[0], decoder.poll());
+        assertArrayEquals(new byte[]{2, 3}, decoder.poll());
+        assertFalse(decoder.hasFrame());
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void rejectsOversizedFrame() throws StreamCorruptedException {
+        FrameDecoder decoder = new FrameDecoder(16);
+        decoder.feed(FrameEncoder.encode(new byte[17]));
+    }
+}
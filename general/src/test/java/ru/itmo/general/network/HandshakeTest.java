@@ -0,0 +1,43 @@
+package ru.itmo.general.network;
+
+import org.junit.Test;
+import ru.itmo.general.network.codec.Codec;
+import ru.itmo.general.network.codec.DeflateCompressor;
+
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link Handshake}.
+ */
+public class HandshakeTest {
+
+    @Test
+    public void negotiatesWhatBothSidesSupport() throws StreamCorruptedException {
+        Handshake.Hello hello = new Handshake.Hello(Handshake.PROTOCOL_VERSION + 1,
+                Handshake.SNAPSHOT_FRAMES | Handshake.SHARED_MEMORY, 1 << Codec.SERIALIZATION.ordinal(),
+                1024, new int[]{200, DeflateCompressor.ID});
+
+        Handshake.Hello received = Handshake.Hello.of(hello.toPayload());
+        assertEquals(1024, received.maxFrameSize());
+        assertTrue(Arrays.equals(hello.compressions(), received.compressions()));
+
+        Handshake.Welcome welcome = Handshake.Welcome.of(
+                Handshake.welcome(received, Handshake.SNAPSHOT_FRAMES, 4096, 16).toPayload());
+        assertEquals(Handshake.PROTOCOL_VERSION, welcome.version());
+        assertTrue(welcome.has(Handshake.SNAPSHOT_FRAMES));
+        assertFalse(welcome.has(Handshake.SHARED_MEMORY));
+        assertEquals(Codec.SERIALIZATION, welcome.codec());
+        assertEquals(DeflateCompressor.ID, welcome.compression());
+        assertEquals(4096, welcome.maxFrameSize());
+        assertEquals(16, welcome.pipelineDepth());
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void rejectsTruncatedHello() throws StreamCorruptedException {
+        byte[] payload = new Handshake.Hello(1, 0, 1, 1024, new int[]{1, 2}).toPayload();
+        Handshake.Hello.of(Arrays.copyOf(payload, payload.length - 1));
+    }
+}
@@ -0,0 +1,159 @@
+package ru.itmo.general.network.codec;
+
+import org.junit.Test;
+import ru.itmo.general.commands.core.Batch;
+import ru.itmo.general.models.*;
+import ru.itmo.general.network.Request;
+import ru.itmo.general.network.Response;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link BinaryCodec}.
+ */
+public class BinaryCodecTest {
+
+    @Test
+    public void roundTripsRequestWithTicket() throws IOException {
+        Ticket ticket = ticket(7, "concert", null);
+        Request request = new Request("add", ticket);
+        request.setLogin("user");
+        request.setPassword("secret");
+        request.setRequestId(42);
+        request.setTimeoutMillis(10000);
+        request.setIdempotencyKey("3f1c2a9e-key");
+        request.setStreamId(5);
+
+        byte[] payload = Codec.BINARY.encode(request);
+        assertEquals(Codec.BINARY, Codec.of(payload));
+        Request decoded = (Request) Codec.of(payload).decode(payload);
+
+        assertEquals("add", decoded.getCommand());
+        assertEquals("user", decoded.getLogin());
+        assertEquals("secret", decoded.getPassword());
+        assertNull(decoded.getUserId());
+        assertEquals(42, decoded.getRequestId());
+        assertEquals(10000, decoded.getTimeoutMillis());
+        assertEquals("3f1c2a9e-key", decoded.getIdempotencyKey());
+        assertEquals(5, decoded.getStreamId());
+        assertTicketEquals(ticket, (Ticket) decoded.getData());
+    }
+
+    @Test
+    public void roundTripsResponseWithTicketList() throws IOException {
+        List<Ticket> tickets = List.of(ticket(1, "a", 3L), ticket(2, "б", null));
+        Response response = new Response(true, "Collection fetched successfully", tickets);
+
+        Response decoded = (Response) Codec.BINARY.decode(Codec.BINARY.encode(response));
+
+        assertTrue(decoded.isSuccess());
+        assertEquals("Collection fetched successfully", decoded.getMessage());
+        List<?> decodedTickets = (List<?>) decoded.getData();
+        assertEquals(2, decodedTickets.size());
+        assertTicketEquals(tickets.get(0), (Ticket) decodedTickets.get(0));
+        assertTicketEquals(tickets.get(1), (Ticket) decodedTickets.get(1));
+        assertTrue(Codec.BINARY.encode(response).length < Codec.SERIALIZATION.encode(response).length);
+    }
+
+    @Test
+    public void roundTripsArraysAndUnknownCommands() throws IOException {
+        Response response = new Response(false, null, new Object[]{"java.util.LinkedList", 3, null, -2.5});
+        Object[] data = (Object[]) Codec.BINARY.decode(Codec.BINARY.encode(response)).getData();
+        assertArrayEquals(new Object[]{"java.util.LinkedList", 3, null, -2.5}, data);
+
+        Request request = new Request("no_such_command", Long.MIN_VALUE);
+        Request decoded = (Request) Codec.BINARY.decode(Codec.BINARY.encode(request));
+        assertEquals("no_such_command", decoded.getCommand());
+        assertEquals(Long.MIN_VALUE, decoded.getData());
+    }
+
+    @Test
+    public void roundTripsTicketWithoutId() throws IOException {
+        Ticket ticket = new Ticket(null, "draft", new Coordinates(1.5, null), 10, null, null, null,
+                new Person(null, null, "P-0", null));
+        Request request = new Request("add", ticket);
+
+        Ticket decoded = (Ticket) Codec.BINARY.decode(Codec.BINARY.encode(request)).getData();
+
+        assertFalse(decoded.hasId());
+        assertEquals("draft", decoded.getName());
+        assertEquals(ticket.getCreationDate(), decoded.getCreationDate());
+    }
+
+    @Test
+    public void roundTripsBatch() throws IOException {
+        Request remove = new Request("remove_by_id", 5);
+        remove.setIdempotencyKey("k-5");
+        Request batch = Batch.of(List.of(new Request("add", ticket(1, "a", null)), remove), true);
+        batch.setToken("token");
+
+        Request decoded = (Request) Codec.BINARY.decode(Codec.BINARY.encode(batch));
+
+        assertTrue(Batch.isParallel(decoded));
+        List<Request> requests = Batch.requestsOf(decoded);
+        assertEquals(2, requests.size());
+        assertEquals("add", requests.get(0).getCommand());
+        assertTicketEquals(ticket(1, "a", null), (Ticket) requests.get(0).getData());
+        assertEquals("remove_by_id", requests.get(1).getCommand());
+        assertEquals(5, requests.get(1).getData());
+        assertEquals("k-5", requests.get(1).getIdempotencyKey());
+
+        Response responses = new Response(true, null, List.of(new Response(true, "added"), new Response(false, "no")));
+        List<?> decodedResponses = (List<?>) Codec.BINARY.decode(Codec.BINARY.encode(responses)).getData();
+        assertEquals("added", ((Response) decodedResponses.get(0)).getMessage());
+        assertFalse(((Response) decodedResponses.get(1)).isSuccess());
+    }
+
+    @Test
+    public void recognizesSerializedPayloads() throws IOException {
+        byte[] payload = Codec.SERIALIZATION.encode(new Request("show", null));
+        assertEquals(Codec.SERIALIZATION, Codec.of(payload));
+        assertEquals("show", ((Request) Codec.of(payload).decode(payload)).getCommand());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedPayload() throws IOException {
+        byte[] payload = Codec.BINARY.encode(new Response(true, "message", ticket(1, "a", 1L)));
+        Codec.BINARY.decode(Arrays.copyOf(payload, payload.length - 3));
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void rejectsUnknownVersion() throws IOException {
+        byte[] payload = Codec.BINARY.encode(new Response(true));
+        payload[1] = 99;
+        Codec.BINARY.decode(payload);
+    }
+
+    private static Ticket ticket(int id, String name, Long discount) {
+        Person person = new Person(LocalDateTime.of(1990, 5, 17, 10, 30, 0, 123_000_000), 180.5f, "P-" + id, Color.BLUE);
+        Ticket ticket = new Ticket(id, name, new Coordinates(1.5, -3f),
+                ZonedDateTime.of(2024, 3, 1, 12, 0, 0, 456_789_000, ZoneId.of("Europe/Moscow")),
+                99.9, discount, null, TicketType.VIP, person);
+        ticket.setUserId(5);
+        return ticket;
+    }
+
+    private static void assertTicketEquals(Ticket expected, Ticket actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getCoordinates(), actual.getCoordinates());
+        assertEquals(expected.getCreationDate(), actual.getCreationDate());
+        assertEquals(expected.getPrice(), actual.getPrice(), 0);
+        assertEquals(expected.getDiscount(), actual.getDiscount());
+        assertEquals(expected.getComment(), actual.getComment());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getPerson().birthday(), actual.getPerson().birthday());
+        assertEquals(expected.getPerson().height(), actual.getPerson().height());
+        assertEquals(expected.getPerson().hairColor(), actual.getPerson().hairColor());
+        assertEquals(expected.getPerson(), actual.getPerson());
+        assertEquals(expected.getUserId(), actual.getUserId());
+    }
+}
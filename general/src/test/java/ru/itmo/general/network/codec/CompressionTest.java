@@ -0,0 +1,57 @@
+package ru.itmo.general.network.codec;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link Compression}.
+ */
+public class CompressionTest {
+
+    @Test
+    public void negotiatesOfferedAlgorithm() {
+        byte[] offer = Compression.offer();
+        assertTrue(Compression.isOffer(offer));
+        PayloadCompressor compressor = Compression.accept(offer);
+        assertNotNull(compressor);
+        assertEquals(DeflateCompressor.ID, compressor.id());
+        assertNull(Compression.accept(new byte[]{Compression.OFFER, 1, (byte) 200}));
+    }
+
+    @Test
+    public void roundTripsThroughEnvelopeWithReusedCompressor() throws IOException {
+        PayloadCompressor compressor = new DeflateCompressor();
+        for (int round = 0; round < 3; round++) {
+            byte[] payload = "Ticket{name='concert', comment='front row'} ".repeat(500 * (round + 1))
+                    .getBytes(StandardCharsets.UTF_8);
+            ByteBuffer direct = ByteBuffer.allocateDirect(payload.length);
+            direct.put(payload).flip();
+
+            ByteArrayOutputStream envelope = new ByteArrayOutputStream();
+            Compression.compress(direct, compressor, envelope);
+            byte[] compressed = envelope.toByteArray();
+
+            assertTrue(Compression.isCompressed(compressed));
+            assertTrue(compressed.length < payload.length / 10);
+            assertArrayEquals(payload, Compression.decompress(compressed, compressor));
+        }
+        compressor.close();
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void rejectsTruncatedEnvelope() throws IOException {
+        PayloadCompressor compressor = new DeflateCompressor();
+        ByteArrayOutputStream envelope = new ByteArrayOutputStream();
+        Compression.compress(ByteBuffer.wrap(new byte[10_000]), compressor, envelope);
+        byte[] compressed = envelope.toByteArray();
+        Compression.decompress(Arrays.copyOf(compressed, compressed.length - 5), compressor);
+    }
+}
@@ -0,0 +1,103 @@
+package ru.itmo.general.network.shm;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link SharedMemoryRing}.
+ */
+public class SharedMemoryRingTest {
+    private static final int CAPACITY = 16;
+
+    private static SharedMemoryRing newRing() {
+        return new SharedMemoryRing(ByteBuffer.allocateDirect(SharedMemoryRing.HEADER_SIZE + CAPACITY), CAPACITY);
+    }
+
+    private static byte[] bytes(int from, int count) {
+        byte[] bytes = new byte[count];
+        for (int i = 0; i < count; i++) bytes[i] = (byte) (from + i);
+        return bytes;
+    }
+
+    private static byte[] readAll(SharedMemoryRing ring, int limit) {
+        ByteBuffer destination = ByteBuffer.allocate(limit);
+        ring.read(destination);
+        destination.flip();
+        byte[] result = new byte[destination.remaining()];
+        destination.get(result);
+        return result;
+    }
+
+    @Test
+    public void readsWhatWasWritten() {
+        SharedMemoryRing ring = newRing();
+        ByteBuffer source = ByteBuffer.wrap(bytes(1, 10));
+        assertEquals(10, ring.write(source));
+        assertFalse(source.hasRemaining());
+        assertArrayEquals(bytes(1, 10), readAll(ring, 64));
+    }
+
+    @Test
+    public void readsNothingFromEmptyRing() {
+        SharedMemoryRing ring = newRing();
+        ByteBuffer destination = ByteBuffer.allocate(8);
+        assertEquals(0, ring.read(destination));
+        assertEquals(0, destination.position());
+
+        ring.write(ByteBuffer.wrap(bytes(1, 4)));
+        readAll(ring, 64);
+        assertEquals(0, ring.read(destination));
+    }
+
+    @Test
+    public void acceptsOnlyFreeSpaceWhenFull() {
+        SharedMemoryRing ring = newRing();
+        ByteBuffer source = ByteBuffer.wrap(bytes(0, CAPACITY + 5));
+        assertEquals(CAPACITY, ring.write(source));
+        assertEquals(5, source.remaining());
+        assertEquals(0, ring.write(source));
+        assertEquals(5, source.remaining());
+
+        assertArrayEquals(bytes(0, 3), readAll(ring, 3));
+        assertEquals(3, ring.write(source));
+        assertEquals(2, source.remaining());
+        assertArrayEquals(bytes(3, CAPACITY), readAll(ring, 64));
+    }
+
+    @Test
+    public void wrapsAroundEndOfData() {
+        SharedMemoryRing ring = newRing();
+        ring.write(ByteBuffer.wrap(bytes(0, 12)));
+        assertArrayEquals(bytes(0, 12), readAll(ring, 64));
+
+        // Запись начинается у конца данных и продолжается с их начала
+        ByteBuffer source = ByteBuffer.wrap(bytes(12, 10));
+        assertEquals(10, ring.write(source));
+        assertArrayEquals(bytes(12, 10), readAll(ring, 64));
+
+        for (int round = 0; round < 5; round++) {
+            byte[] chunk = bytes(round * 7, 7);
+            assertEquals(7, ring.write(ByteBuffer.wrap(chunk)));
+            assertArrayEquals(chunk, readAll(ring, 64));
+        }
+    }
+
+    @Test
+    public void readsIntoPartOfDestination() {
+        SharedMemoryRing ring = newRing();
+        ring.write(ByteBuffer.wrap(bytes(0, 14)));
+        readAll(ring, 14);
+        ring.write(ByteBuffer.wrap(bytes(20, 6)));
+
+        ByteBuffer destination = ByteBuffer.allocate(10);
+        destination.position(4);
+        assertEquals(6, ring.read(destination));
+        assertEquals(10, destination.position());
+        byte[] tail = new byte[6];
+        destination.get(4, tail);
+        assertArrayEquals(bytes(20, 6), tail);
+    }
+}
@@ -83,7 +83,7 @@ public class TicketDAO implements Accessible {
     public int addTicket(Ticket ticket, int userId) {
         try (Connection connection = getConnection();
              PreparedStatement statement =
-                     connection.prepareStatement(INSERT_TICKET_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                     withDeadline(connection.prepareStatement(INSERT_TICKET_SQL, Statement.RETURN_GENERATED_KEYS))) {
             set(statement, ticket);
 
             int rowsAffected = executePrepareUpdate(statement);
@@ -119,7 +119,7 @@ public class TicketDAO implements Accessible {
      */
     public void addTickets(Collection<Ticket> tickets, int userId) {
         try (Connection connection = getConnection();
-             PreparedStatement statement = connection.prepareStatement(INSERT_TICKET_SQL)) {
+             PreparedStatement statement = withDeadline(connection.prepareStatement(INSERT_TICKET_SQL))) {
             for (Ticket ticket : tickets) {
                 set(statement, ticket);
                 statement.addBatch();
@@ -166,7 +166,7 @@ public class TicketDAO implements Accessible {
     public List<Ticket> getAllTickets() {
         List<Ticket> tickets = new ArrayList<>();
         try (Connection connection = getConnection();
-             PreparedStatement statement = connection.prepareStatement(SELECT_ALL_TICKETS_SQL);
+             PreparedStatement statement = withDeadline(connection.prepareStatement(SELECT_ALL_TICKETS_SQL));
              ResultSet resultSet = statement.executeQuery()) {
             while (resultSet.next()) {
                 Ticket ticket = extractTicketFromResultSet(resultSet);
@@ -188,7 +188,7 @@ public class TicketDAO implements Accessible {
      */
     public boolean removeTicketById(int ticketId) {
         try (Connection connection = getConnection();
-             PreparedStatement statement = connection.prepareStatement(REMOVE_TICKET_SQL)) {
+             PreparedStatement statement = withDeadline(connection.prepareStatement(REMOVE_TICKET_SQL))) {
             statement.setInt(1, ticketId);
             return executePrepareUpdate(statement) > 0;
         } catch (NullPointerException exception) {
@@ -208,7 +208,7 @@ public class TicketDAO implements Accessible {
      */
     public boolean updateTicket(Ticket ticket) {
         try (Connection connection = getConnection();
-             PreparedStatement statement = connection.prepareStatement(UPDATE_TICKET_SQL)) {
+             PreparedStatement statement = withDeadline(connection.prepareStatement(UPDATE_TICKET_SQL))) {
 
             set(statement, ticket);
             statement.setInt(13, ticket.getId());
@@ -272,7 +272,7 @@ public class TicketDAO implements Accessible {
     @Override
     public boolean checkOwnership(int ticketId, int userId) {
         try (Connection connection = getConnection();
-             PreparedStatement statement = connection.prepareStatement(CHECK_TICKET_OWNERSHIP_SQL)) {
+             PreparedStatement statement = withDeadline(connection.prepareStatement(CHECK_TICKET_OWNERSHIP_SQL))) {
             statement.setInt(1, ticketId);
             ResultSet resultSet = statement.executeQuery();
 
@@ -295,7 +295,7 @@ public class TicketDAO implements Accessible {
 
     public boolean removeTicketsByUserId(int userId) {
         try (Connection connection = getConnection();
-             PreparedStatement statement = connection.prepareStatement(REMOVE_TICKETS_BY_USER_ID_SQL)) {
+             PreparedStatement statement = withDeadline(connection.prepareStatement(REMOVE_TICKETS_BY_USER_ID_SQL))) {
             statement.setInt(1, userId);
             int rowsAffected = statement.executeUpdate();
             return rowsAffected > 0;
@@ -100,7 +100,7 @@ public class UserDAO implements Registered {
     public boolean insertUser(String username, String passwordHash,
                               String salt, LocalDateTime registrationDate,
                               LocalDateTime lastLoginDate) {
-        try (PreparedStatement statement = connection.prepareStatement(INSERT_USER_BY_SQL)) {
+        try (PreparedStatement statement = withDeadline(connection.prepareStatement(INSERT_USER_BY_SQL))) {
             statement.setString(1, username);
             statement.setString(2, passwordHash);
             statement.setString(3, salt);
@@ -120,7 +120,7 @@ public class UserDAO implements Registered {
      * @return The User object if found, otherwise null.
      */
     public User getUserByUsername(String username) {
-        try (PreparedStatement statement = connection.prepareStatement(SELECT_USER_BY_USERNAME_SQL)) {
+        try (PreparedStatement statement = withDeadline(connection.prepareStatement(SELECT_USER_BY_USERNAME_SQL))) {
             statement.setString(1, username);
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next()) {
@@ -151,7 +151,7 @@ public class UserDAO implements Registered {
      * @return true if the user was successfully updated, otherwise false.
      */
     public boolean updateUser(int userId, String newUsername, String newPasswordHash, LocalDateTime newLastLoginDate) {
-        try (PreparedStatement statement = connection.prepareStatement(UPDATE_USER_BY_ID_SQL)) {
+        try (PreparedStatement statement = withDeadline(connection.prepareStatement(UPDATE_USER_BY_ID_SQL))) {
             statement.setString(1, newUsername);
             statement.setString(2, newPasswordHash);
             statement.setObject(3, newLastLoginDate);
@@ -175,7 +175,8 @@ public class UserDAO implements Registered {
         try {
             // Retrieve salt from the database
             String salt = null;
-            try (PreparedStatement selectStatement = connection.prepareStatement(SELECT_SALT_BY_USERNAME_SQL)) {
+            try (PreparedStatement selectStatement =
+                         withDeadline(connection.prepareStatement(SELECT_SALT_BY_USERNAME_SQL))) {
                 selectStatement.setString(1, username);
                 try (ResultSet resultSet = selectStatement.executeQuery()) {
                     if (resultSet.next()) {
@@ -194,7 +195,7 @@ public class UserDAO implements Registered {
 
             // Update the user's password in the database
             try (PreparedStatement updateStatement =
-                         connection.prepareStatement(UPDATE_USER_BY_USERNAME_AND_PASSWORD_SQL)) {
+                         withDeadline(connection.prepareStatement(UPDATE_USER_BY_USERNAME_AND_PASSWORD_SQL))) {
                 updateStatement.setString(1, newPasswordHash);
                 updateStatement.setObject(2, LocalDateTime.now());
                 updateStatement.setString(3, username);
@@ -222,7 +223,7 @@ public class UserDAO implements Registered {
      * @return true if the password is correct, otherwise false.
      */
     public boolean verifyUserPassword(String username, String password) {
-        try (PreparedStatement statement = connection.prepareStatement(SELECT_USER_BY_ID_SQL)) {
+        try (PreparedStatement statement = withDeadline(connection.prepareStatement(SELECT_USER_BY_ID_SQL))) {
             statement.setString(1, username);
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next()) {
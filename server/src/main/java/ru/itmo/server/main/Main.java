@@ -5,11 +5,22 @@ import org.slf4j.LoggerFactory;
 import ru.itmo.general.managers.CommandManager;
 import ru.itmo.server.dao.TicketDAO;
 import ru.itmo.server.dao.UserDAO;
+import ru.itmo.server.managers.ChangeLog;
+import ru.itmo.server.managers.SnapshotManager;
 import ru.itmo.server.managers.collections.TicketCollectionManager;
 import ru.itmo.server.utility.Runner;
+import ru.itmo.server.utility.ServerSettings;
+import ru.itmo.server.utility.network.ChangeBroadcaster;
+import ru.itmo.server.utility.network.RequestExecutor;
 import ru.itmo.server.utility.network.TCPServer;
 import sun.misc.Signal;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.nio.file.Path;
+
 import static ru.itmo.server.managers.DatabaseManager.createDatabaseIfNotExists;
 
 /**
@@ -20,6 +31,16 @@ import static ru.itmo.server.managers.DatabaseManager.createDatabaseIfNotExists;
 public class Main {
     private static final int MISSING_FILE_ARGUMENT_EXIT_CODE = 1;
     private static final int PORT = 4093;
+    private static final int WORKERS = Integer.getInteger("server.workers", Runtime.getRuntime().availableProcessors());
+    private static final String EXECUTION_MODE = System.getProperty("server.execution", "pool");
+    private static final String SOCKET_PATH = System.getProperty("server.socket.path");
+    // Группа, в которую рассылаются уведомления об изменениях коллекции; "none" отключает рассылку
+    private static final String MULTICAST_GROUP = System.getProperty("server.multicast.group", "239.255.40.93");
+    private static final int MULTICAST_PORT = Integer.getInteger("server.multicast.port", 4094);
+    private static final String MULTICAST_INTERFACE = System.getProperty("server.multicast.interface");
+    private static final int MULTICAST_TTL = Integer.getInteger("server.multicast.ttl", 1);
+    // Сколько ждать завершения начатых запросов при остановке сервера, в миллисекундах
+    private static final long DRAIN_TIMEOUT_MILLIS = Long.getLong("server.drain.timeout", 10000);
     private static final Logger logger = LoggerFactory.getLogger(Main.class);
 
     /**
@@ -28,7 +49,8 @@ public class Main {
      * @param args аргументы командной строки
      */
     public static void main(String[] args) {
-        setSignalProcessing("INT", "TERM", "TSTP", "BREAK", "EOF");
+        // SIGTERM не перехватывается: по нему JVM выполняет shutdown hook и сервер останавливается плавно
+        setSignalProcessing("INT", "TSTP", "BREAK", "EOF");
 
         createDatabaseIfNotExists();
 
@@ -37,13 +59,41 @@ public class Main {
         runner.start();
 
         var ticketCollectionManager = new TicketCollectionManager();
+        SnapshotManager.init(ticketCollectionManager);
+        ChangeLog changeLog = ChangeLog.getInstance();
+        startChangeBroadcast(changeLog);
 
         UserDAO userDAO = new UserDAO();
-        CommandManager.initServerCommands(ticketCollectionManager, new TicketDAO(), userDAO);
-        TCPServer tcpServer = new TCPServer(PORT);
+        CommandManager.initServerCommands(ticketCollectionManager, new TicketDAO(), userDAO, changeLog);
+        ServerSettings settings = ServerSettings.getInstance();
+        var requestExecutor = new RequestExecutor(RequestExecutor.Mode.valueOf(EXECUTION_MODE.toUpperCase()), settings.getPoolSize());
+        settings.addListener(changed -> requestExecutor.setPoolSize(changed.getPoolSize()));
+        Path socketPath = SOCKET_PATH == null ? null : Path.of(SOCKET_PATH);
+        TCPServer tcpServer = new TCPServer(PORT, socketPath, WORKERS, requestExecutor);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> tcpServer.shutdown(DRAIN_TIMEOUT_MILLIS), "shutdown"));
         tcpServer.start();
     }
 
+    /**
+     * Запускает рассылку уведомлений об изменениях коллекции, если она не отключена.
+     * Сервер работает и без нее: клиенты тогда сами опрашивают его об изменениях.
+     *
+     * @param changeLog журнал изменений коллекции
+     */
+    private static void startChangeBroadcast(ChangeLog changeLog) {
+        if (MULTICAST_GROUP.equalsIgnoreCase("none")) return;
+        try {
+            NetworkInterface networkInterface = MULTICAST_INTERFACE == null ? null
+                    : NetworkInterface.getByName(MULTICAST_INTERFACE);
+            var group = new InetSocketAddress(InetAddress.getByName(MULTICAST_GROUP), MULTICAST_PORT);
+            var broadcaster = new ChangeBroadcaster(group, networkInterface, MULTICAST_TTL,
+                    changeLog.epoch(), changeLog.lastSequence());
+            changeLog.setListener(broadcaster::publish);
+        } catch (IOException e) {
+            logger.warn("Change notices are not published: {}", e.getMessage());
+        }
+    }
+
     /**
      * Обработка сигналов, таких как ctrl z, ctrl c...
      *
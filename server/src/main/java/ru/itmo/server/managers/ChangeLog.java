@@ -0,0 +1,98 @@
+package ru.itmo.server.managers;
+
+import ru.itmo.general.network.ChangeNotice;
+import ru.itmo.general.utility.base.Journaled;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Journal of the recent changes of the collection.
+ * Every change gets the next number; the last {@code -Dserver.changes.capacity} changes (4096 by default)
+ * are kept in a ring, so that a client which missed some change notices fetches only the tickets changed since
+ * the last one it has seen. The epoch of the journal is the start time of the server.
+ *
+ * @author zevtos
+ */
+public class ChangeLog implements Journaled {
+    private static final int CAPACITY = Integer.getInteger("server.changes.capacity", 4096);
+    private static final ChangeLog instance = new ChangeLog(CAPACITY);
+
+    private final long epoch = System.currentTimeMillis();
+    private final ChangeNotice[] ring;
+    private long lastSequence;
+    private volatile Consumer<List<ChangeNotice>> listener;
+
+    /**
+     * Constructs an empty journal.
+     *
+     * @param capacity the number of changes kept
+     */
+    ChangeLog(int capacity) {
+        this.ring = new ChangeNotice[capacity];
+    }
+
+    /**
+     * Returns the journal of the collection of the server.
+     *
+     * @return the shared journal
+     */
+    public static ChangeLog getInstance() {
+        return instance;
+    }
+
+    /**
+     * Sets the listener receiving the notices of every change, in the order of the changes.
+     * It is called while the collection is locked, so it must not block.
+     *
+     * @param listener the listener, or null for none
+     */
+    public void setListener(Consumer<List<ChangeNotice>> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Records a change of the collection.
+     *
+     * @param operation what happened to the tickets
+     * @param version   the version of the collection after the change
+     * @param ticketIds the IDs of the changed tickets
+     */
+    public synchronized void record(ChangeNotice.Operation operation, long version, int... ticketIds) {
+        if (ticketIds.length == 0) return;
+        List<ChangeNotice> notices = new ArrayList<>(ticketIds.length);
+        for (int ticketId : ticketIds) {
+            ChangeNotice notice = new ChangeNotice(++lastSequence, version, operation, ticketId);
+            ring[(int) (lastSequence % ring.length)] = notice;
+            notices.add(notice);
+        }
+        Consumer<List<ChangeNotice>> current = listener;
+        if (current != null) {
+            current.accept(notices);
+        }
+    }
+
+    @Override
+    public long epoch() {
+        return epoch;
+    }
+
+    @Override
+    public synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    @Override
+    public synchronized Collection<Integer> changedSince(long sequence) {
+        if (sequence < 0 || sequence > lastSequence || lastSequence - sequence > ring.length) return null;
+        Set<Integer> ids = new LinkedHashSet<>();
+        for (long i = sequence + 1; i <= lastSequence; i++) {
+            ids.add(ring[(int) (i % ring.length)].ticketId());
+        }
+        return ids;
+    }
+}
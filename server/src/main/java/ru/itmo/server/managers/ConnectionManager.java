@@ -2,6 +2,7 @@ package ru.itmo.server.managers;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.itmo.general.network.Deadline;
 
 import java.sql.*;
 
@@ -47,6 +48,28 @@ public class ConnectionManager {
         }
     }
 
+    /**
+     * Limits the execution time of a statement by the deadline of the request processed by the current thread,
+     * so that the database cancels a query whose result nobody waits for any more.
+     *
+     * @param statement The freshly prepared statement.
+     * @param <T>       The type of the statement.
+     * @return The same statement.
+     * @throws SQLTimeoutException If the deadline has already passed; the statement is closed in that case.
+     * @throws SQLException        If the timeout could not be set.
+     */
+    public static <T extends Statement> T withDeadline(T statement) throws SQLException {
+        if (Deadline.currentExpired()) {
+            statement.close();
+            throw new SQLTimeoutException("Deadline of the request has passed");
+        }
+        int timeout = Deadline.queryTimeoutSeconds();
+        if (timeout > 0) {
+            statement.setQueryTimeout(timeout);
+        }
+        return statement;
+    }
+
     private static void logError(String message, SQLException e) {
         if (e == null) {
             LOGGER.error(message);
@@ -0,0 +1,156 @@
+package ru.itmo.server.managers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.itmo.general.network.Deadline;
+import ru.itmo.general.network.Request;
+import ru.itmo.general.network.Response;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * In-memory table of the idempotency keys of the requests changing the collection, with their responses.
+ * A client sends a request again with the same key when the connection was lost before the response arrived;
+ * the request is then not applied a second time, and the replay gets the response of the first execution,
+ * waiting for it if the first execution is still running. The table keeps at most
+ * {@code -Dserver.idempotency.capacity} keys (10000 by default), each for {@code -Dserver.idempotency.ttl}
+ * seconds (600 by default), much longer than a client keeps replaying a request.
+ *
+ * @author zevtos
+ */
+public class IdempotencyCache {
+    private static final Logger logger = LoggerFactory.getLogger("IdempotencyCache");
+    private static final int CAPACITY = Integer.getInteger("server.idempotency.capacity", 10000);
+    private static final long TTL_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong("server.idempotency.ttl", 600));
+    /**
+     * How long a replay waits for the first execution if the request has no deadline of its own.
+     */
+    private static final long REPLAY_WAIT_MILLIS = 60000;
+    private static final IdempotencyCache instance = new IdempotencyCache(CAPACITY, TTL_MILLIS);
+
+    private final Map<String, Entry> entries;
+    private final long ttlMillis;
+
+    /**
+     * Constructs an empty table.
+     *
+     * @param capacity  the largest number of keys kept
+     * @param ttlMillis how long a key is kept
+     */
+    IdempotencyCache(int capacity, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the table shared by the whole server.
+     *
+     * @return the shared table
+     */
+    public static IdempotencyCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Executes a request unless a request with the same key has already been executed for the same user.
+     * A request that was not applied, because it failed or its deadline passed, is forgotten,
+     * so that its replay is executed.
+     *
+     * @param request the request, carrying an idempotency key
+     * @param command executes the request
+     * @return the response of this execution, or a copy of the response of the first one
+     */
+    public Response execute(Request request, Function<Request, Response> command) {
+        String key = request.getUserId() + "/" + request.getIdempotencyKey();
+        CompletableFuture<Response> own = new CompletableFuture<>();
+        CompletableFuture<Response> first;
+        synchronized (this) {
+            purgeExpired();
+            Entry entry = entries.get(key);
+            first = entry != null ? entry.response() : null;
+            if (first == null) {
+                entries.put(key, new Entry(own, System.currentTimeMillis()));
+            }
+        }
+        if (first != null) {
+            logger.debug("Request {} with key {} is a replay", request.getCommand(), request.getIdempotencyKey());
+            Response response = awaitFirst(first);
+            return response != null ? copy(response) : execute(request, command);
+        }
+        Response response;
+        try {
+            response = command.apply(request);
+        } catch (RuntimeException e) {
+            forget(key, own);
+            own.completeExceptionally(e);
+            throw e;
+        }
+        if (!isApplied(response)) {
+            forget(key, own);
+        }
+        own.complete(response);
+        return response;
+    }
+
+    /**
+     * Waits for the response of the first execution of a request, until the {@link Deadline} of the replay passes.
+     *
+     * @return the response, or null if the first execution did not apply the request
+     */
+    private Response awaitFirst(CompletableFuture<Response> first) {
+        Deadline deadline = Deadline.current();
+        long waitMillis = deadline != null ? deadline.remainingMillis() : REPLAY_WAIT_MILLIS;
+        try {
+            Response response = first.get(waitMillis, TimeUnit.MILLISECONDS);
+            return isApplied(response) ? response : null;
+        } catch (ExecutionException e) {
+            return null;
+        } catch (TimeoutException e) {
+            return new Response(false, Response.DEADLINE_EXCEEDED);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Response(false, Response.DEADLINE_EXCEEDED);
+        }
+    }
+
+    private static boolean isApplied(Response response) {
+        return response != null && !Response.DEADLINE_EXCEEDED.equals(response.getMessage());
+    }
+
+    /**
+     * Copies a response, so that the response shared by the executions is not changed when it is sent.
+     */
+    private static Response copy(Response response) {
+        return new Response(response.isSuccess(), response.getMessage(), response.getData());
+    }
+
+    private synchronized void forget(String key, CompletableFuture<Response> response) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.response() == response) {
+            entries.remove(key);
+        }
+    }
+
+    private void purgeExpired() {
+        long expiredBefore = System.currentTimeMillis() - ttlMillis;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext() && iterator.next().createdAt() < expiredBefore) {
+            iterator.remove();
+        }
+    }
+
+    private record Entry(CompletableFuture<Response> response, long createdAt) {
+    }
+}
@@ -0,0 +1,138 @@
+package ru.itmo.server.managers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory table of the sessions opened by authenticated users.
+ * A session is identified by an opaque random token, which clients send instead of their credentials,
+ * so a request is authenticated by a single hash lookup instead of a database query and a password hash.
+ * Sessions expire after a period of inactivity ({@code -Dserver.session.ttl}, in minutes, 30 by default).
+ *
+ * @author zevtos
+ */
+public class SessionManager {
+    private static final Logger logger = LoggerFactory.getLogger("SessionManager");
+    private static final int TOKEN_BYTES = 32;
+    private static final long TTL_MILLIS = TimeUnit.MINUTES.toMillis(Long.getLong("server.session.ttl", 30));
+    private static final SessionManager instance = new SessionManager(TTL_MILLIS);
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    /**
+     * Token of the live session of each user, reused when the user authenticates again.
+     */
+    private final Map<Integer, String> tokensByUser = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final long ttlMillis;
+    private volatile long lastPurge = System.currentTimeMillis();
+
+    /**
+     * Constructs an empty session table.
+     *
+     * @param ttlMillis the inactivity period after which a session expires
+     */
+    SessionManager(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Returns the session table shared by the whole server.
+     *
+     * @return the shared session table
+     */
+    public static SessionManager getInstance() {
+        return instance;
+    }
+
+    /**
+     * Opens a session for an authenticated user, or returns the session the user already has,
+     * so that a client retrying with its credentials or using several connections does not leave sessions behind.
+     *
+     * @param userId   the ID of the user
+     * @param username the name of the user
+     * @return the token identifying the session
+     */
+    public String open(int userId, String username) {
+        purgeExpired();
+        return tokensByUser.compute(userId, (id, existing) -> {
+            Session live = validate(existing);
+            if (live != null && live.username().equals(username)) {
+                return existing;
+            }
+            if (existing != null) sessions.remove(existing);
+            byte[] bytes = new byte[TOKEN_BYTES];
+            random.nextBytes(bytes);
+            String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+            sessions.put(token, new Session(userId, username, System.currentTimeMillis() + ttlMillis));
+            logger.debug("Session opened for user {}", username);
+            return token;
+        });
+    }
+
+    /**
+     * Looks a session up by its token and extends its lifetime.
+     *
+     * @param token the token sent by the client
+     * @return the session, or null if the token is unknown or the session has expired
+     */
+    public Session validate(String token) {
+        if (token == null) return null;
+        Session session = sessions.get(token);
+        if (session == null) return null;
+        long now = System.currentTimeMillis();
+        if (session.expiresAt() < now) {
+            sessions.remove(token, session);
+            return null;
+        }
+        Session extended = new Session(session.userId(), session.username(), now + ttlMillis);
+        sessions.replace(token, session, extended);
+        return extended;
+    }
+
+    /**
+     * Closes a session.
+     *
+     * @param token the token of the session
+     */
+    public void close(String token) {
+        if (token == null) return;
+        Session session = sessions.remove(token);
+        if (session != null) tokensByUser.remove(session.userId(), token);
+    }
+
+    /**
+     * Returns the number of sessions currently stored, including expired ones not yet purged.
+     *
+     * @return the number of sessions
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Removes expired sessions, at most once per session lifetime.
+     */
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        if (now - lastPurge < ttlMillis) return;
+        lastPurge = now;
+        sessions.values().removeIf(session -> session.expiresAt() < now);
+        tokensByUser.values().removeIf(token -> !sessions.containsKey(token));
+    }
+
+    /**
+     * A session of an authenticated user.
+     *
+     * @param userId    the ID of the user
+     * @param username  the name of the user
+     * @param expiresAt the time in milliseconds after which the session is no longer valid
+     */
+    public record Session(int userId, String username, long expiresAt) {
+    }
+}
@@ -0,0 +1,112 @@
+package ru.itmo.server.managers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.itmo.general.models.Ticket;
+import ru.itmo.general.network.Response;
+import ru.itmo.general.network.codec.Codec;
+import ru.itmo.server.managers.collections.TicketCollectionManager;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the response to {@code download_snapshot} encoded in files, one per wire format.
+ * A file is written once per version of the collection, the first time it is requested, and every download
+ * of that version is then served straight from the file with {@link FileChannel#transferTo},
+ * without encoding the collection again or copying it through the heap.
+ * Files are created in {@code -Dserver.snapshot.dir}, the temporary directory by default.
+ *
+ * @author zevtos
+ */
+public class SnapshotManager {
+    private static final Logger logger = LoggerFactory.getLogger("SnapshotManager");
+    private static final Path DIRECTORY = Path.of(System.getProperty("server.snapshot.dir",
+            System.getProperty("java.io.tmpdir")));
+    private static volatile SnapshotManager instance;
+
+    private final TicketCollectionManager collectionManager;
+    private final Map<Codec, Snapshot> snapshots = new EnumMap<>(Codec.class);
+
+    private SnapshotManager(TicketCollectionManager collectionManager) {
+        this.collectionManager = collectionManager;
+    }
+
+    /**
+     * Creates the manager of the snapshots of a collection.
+     *
+     * @param collectionManager the collection to take snapshots of
+     */
+    public static void init(TicketCollectionManager collectionManager) {
+        instance = new SnapshotManager(collectionManager);
+    }
+
+    /**
+     * Returns the snapshot manager of the server.
+     *
+     * @return the manager, or null if snapshots are not enabled
+     */
+    public static SnapshotManager getInstance() {
+        return instance;
+    }
+
+    /**
+     * Opens the encoded response holding the current version of the collection, writing it first if needed.
+     * The returned channel stays readable even if the file is replaced by a newer version meanwhile.
+     *
+     * @param codec the wire format of the response
+     * @return a channel to read the encoded response from; the caller must close it
+     * @throws IOException if the snapshot could not be written or opened
+     */
+    public synchronized FileChannel open(Codec codec) throws IOException {
+        Snapshot snapshot = snapshots.get(codec);
+        long version = collectionManager.getVersion();
+        if (snapshot == null || snapshot.version() != version) {
+            Snapshot fresh = write(codec, version);
+            snapshots.put(codec, fresh);
+            if (snapshot != null) {
+                delete(snapshot.file());
+            }
+            snapshot = fresh;
+        }
+        return FileChannel.open(snapshot.file(), StandardOpenOption.READ);
+    }
+
+    /**
+     * Encodes the collection into a new file.
+     * The version is read before the collection is copied, so the file is never older than its version says.
+     */
+    private Snapshot write(Codec codec, long version) throws IOException {
+        List<Ticket> tickets = collectionManager.copy();
+        Path file = Files.createTempFile(DIRECTORY, "tickets-" + codec.name().toLowerCase() + "-", ".snapshot");
+        file.toFile().deleteOnExit();
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(file))) {
+            codec.encode(new Response(true, "Collection fetched successfully", tickets), outputStream);
+        } catch (IOException e) {
+            delete(file);
+            throw e;
+        }
+        logger.info("Snapshot of version {} written to {} ({} bytes)", version, file, Files.size(file));
+        return new Snapshot(version, file);
+    }
+
+    private void delete(Path file) {
+        try {
+            // Downloads still reading the old file keep their channel open, the file disappears afterwards
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.debug("Could not delete snapshot {}: {}", file, e.getMessage());
+        }
+    }
+
+    private record Snapshot(long version, Path file) {
+    }
+}
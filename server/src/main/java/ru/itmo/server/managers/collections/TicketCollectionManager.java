@@ -5,13 +5,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.itmo.general.managers.CollectionManager;
 import ru.itmo.general.models.Ticket;
+import ru.itmo.general.network.ChangeNotice.Operation;
 import ru.itmo.server.dao.TicketDAO;
+import ru.itmo.server.managers.ChangeLog;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -23,10 +28,16 @@ public class TicketCollectionManager implements CollectionManager<Ticket> {
     private final Logger logger = LoggerFactory.getLogger("TicketCollectionManager");
     @Getter
     private final LinkedList<Ticket> collection = new LinkedList<>();
+    /**
+     * Неизменяемая копия коллекции, публикуемая при каждом изменении, для чтения без замка
+     */
+    private volatile List<Ticket> snapshot = List.of();
     private final ReentrantLock lock = new ReentrantLock(true); // Замок для синхронизации доступа
     private final TicketDAO dao;
     @Getter
     private LocalDateTime lastSaveTime;
+    private final AtomicLong version = new AtomicLong();
+    private final ChangeLog changeLog = ChangeLog.getInstance();
 
     /**
      * Создает менеджер коллекции билетов.
@@ -73,7 +84,7 @@ public class TicketCollectionManager implements CollectionManager<Ticket> {
             if (newID < 0) return -1;
             ticket.setId(newID);
             collection.add(ticket);
-            update();
+            changed(Operation.ADD, newID);
             return newID;
         } finally {
             lock.unlock();
@@ -92,9 +103,12 @@ public class TicketCollectionManager implements CollectionManager<Ticket> {
             }
             if (!dao.removeTicketById(ticket.getId())) return false;
             collection.remove(ticket);
-            if (!dao.updateTicket(ticket)) return false;
+            if (!dao.updateTicket(ticket)) {
+                changed(Operation.REMOVE, ticket.getId());
+                return false;
+            }
             collection.add(ticket);
-            update();
+            changed(Operation.UPDATE, ticket.getId());
             return true;
         } finally {
             lock.unlock();
@@ -114,7 +128,7 @@ public class TicketCollectionManager implements CollectionManager<Ticket> {
             }
             if (!dao.removeTicketById(ticket.getId())) return false;
             collection.remove(ticket);
-            update();
+            changed(Operation.REMOVE, ticket.getId());
             return true;
         } finally {
             lock.unlock();
@@ -126,6 +140,43 @@ public class TicketCollectionManager implements CollectionManager<Ticket> {
      */
     public void update() {
         Collections.sort(collection);
+        snapshot = List.copyOf(collection);
+        version.incrementAndGet();
+    }
+
+    /**
+     * Копия коллекции на момент последнего изменения, читается без замка
+     */
+    @Override
+    public List<Ticket> snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Фиксирует изменение коллекции и записывает его в журнал изменений
+     */
+    private void changed(Operation operation, int... ticketIds) {
+        update();
+        changeLog.record(operation, version.get(), ticketIds);
+    }
+
+    /**
+     * Номер версии коллекции, увеличивается при каждом изменении
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Копия коллекции, снятая под замком
+     */
+    public List<Ticket> copy() {
+        try {
+            lock.lock();
+            return new ArrayList<>(collection);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -161,6 +212,7 @@ public class TicketCollectionManager implements CollectionManager<Ticket> {
             lock.lock();
             if (!dao.removeTicketById(ticket.getId())) return false;
             collection.remove(ticket);
+            changed(Operation.REMOVE, ticket.getId());
             return true;
         } finally {
             lock.unlock();
@@ -173,7 +225,12 @@ public class TicketCollectionManager implements CollectionManager<Ticket> {
             lock.lock();
             boolean result = dao.removeTicketsByUserId(userId);
             if (result) {
+                int[] removed = collection.stream()
+                        .filter(ticket -> ticket.getUserId() == userId)
+                        .mapToInt(Ticket::getId)
+                        .toArray();
                 collection.removeIf(ticket -> ticket.getUserId() == userId);
+                changed(Operation.REMOVE, removed);
             }
             return result;
         } finally {
@@ -4,7 +4,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.itmo.general.managers.CommandManager;
 import ru.itmo.general.network.Request;
-import ru.itmo.server.utility.network.TCPServer;
+import ru.itmo.server.utility.network.ConnectionMonitor;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
@@ -28,11 +28,21 @@ public class Runner extends Thread {
         while (true) {
             try {
                 input = in.readLine();
+                if (input == null) {
+                    // Консоль закрыта (сервер запущен в фоне): он работает дальше и останавливается по SIGTERM
+                    return;
+                }
                 if (input.equals("exit")) {
-                    // Handles exit command
+                    // Handles exit command; the shutdown hook drains the connections before the JVM exits
                     CommandManager.handleServer(new Request(true, input, null));
                     System.exit(0);
                     break;
+                } else if (input.equals("settings")) {
+                    logger.info("Server settings:\n{}", ServerSettings.getInstance());
+                } else if (input.equals("connections")) {
+                    logger.info("Open connections: {}", ConnectionMonitor.getInstance().openConnections());
+                } else if (input.startsWith("set ")) {
+                    changeSetting(input.substring(4).trim().split("\\s+"));
                 }
             } catch (Exception e) {
                 logger.error("Error reading from console");
@@ -41,4 +51,21 @@ public class Runner extends Thread {
             }
         }
     }
+
+    /**
+     * Handles the {@code set <name> <value>} console command.
+     *
+     * @param arguments the name and the new value of the setting
+     */
+    private void changeSetting(String[] arguments) {
+        if (arguments.length != 2) {
+            logger.error("Usage: set <name> <value>");
+            return;
+        }
+        try {
+            ServerSettings.getInstance().set(arguments[0], arguments[1]);
+        } catch (IllegalArgumentException e) {
+            logger.error(e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,142 @@
+package ru.itmo.server.utility;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Server limits that can be changed while the server is running, with the {@code set} console command.
+ * Initial values are taken from system properties.
+ *
+ * @author zevtos
+ */
+public class ServerSettings {
+    private static final Logger logger = LoggerFactory.getLogger("ServerSettings");
+    private static final ServerSettings instance = new ServerSettings();
+
+    private final List<Consumer<ServerSettings>> listeners = new CopyOnWriteArrayList<>();
+    private volatile int poolSize = Integer.getInteger("server.pool.size", 10);
+    private volatile int maxInFlight = Integer.getInteger("server.inflight.max", 1024);
+    private volatile int maxInFlightPerConnection = Integer.getInteger("server.inflight.perConnection", 64);
+    private volatile int retryAfterMillis = Integer.getInteger("server.busy.retryAfter", 200);
+    private volatile int idleTimeoutSeconds = Integer.getInteger("server.idle.timeout", 60);
+    private volatile int heartbeatTimeoutSeconds = Integer.getInteger("server.heartbeat.timeout", 30);
+
+    private ServerSettings() {
+    }
+
+    /**
+     * Returns the settings of the server.
+     *
+     * @return the shared settings
+     */
+    public static ServerSettings getInstance() {
+        return instance;
+    }
+
+    /**
+     * Registers a listener called after every change of a setting.
+     *
+     * @param listener the listener
+     */
+    public void addListener(Consumer<ServerSettings> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Returns the number of threads running request handlers in pool mode.
+     *
+     * @return the pool size
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * Returns the maximum number of requests accepted for processing but not yet answered, over all connections.
+     *
+     * @return the global in-flight limit
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Returns the maximum number of requests accepted for processing but not yet answered on a single connection.
+     *
+     * @return the per-connection in-flight limit
+     */
+    public int getMaxInFlightPerConnection() {
+        return maxInFlightPerConnection;
+    }
+
+    /**
+     * Returns the delay suggested to clients whose requests are rejected because the server is busy.
+     *
+     * @return the delay in milliseconds
+     */
+    public int getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    /**
+     * Returns the time without any data from a client after which it is sent a heartbeat.
+     *
+     * @return the idle timeout in seconds
+     */
+    public int getIdleTimeoutSeconds() {
+        return idleTimeoutSeconds;
+    }
+
+    /**
+     * Returns the time a client has to answer a heartbeat before its connection is closed.
+     *
+     * @return the heartbeat timeout in seconds
+     */
+    public int getHeartbeatTimeoutSeconds() {
+        return heartbeatTimeoutSeconds;
+    }
+
+    /**
+     * Changes a setting by name.
+     *
+     * @param name  the name of the setting as printed by {@link #toString()}
+     * @param value the new value
+     * @throws IllegalArgumentException if there is no such setting or the value is not a positive integer
+     */
+    public void set(String name, String value) {
+        int number;
+        try {
+            number = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Value must be an integer: " + value);
+        }
+        if (number <= 0) throw new IllegalArgumentException("Value must be positive: " + value);
+        switch (name) {
+            case "pool.size" -> poolSize = number;
+            case "inflight.max" -> maxInFlight = number;
+            case "inflight.perConnection" -> maxInFlightPerConnection = number;
+            case "busy.retryAfter" -> retryAfterMillis = number;
+            case "idle.timeout" -> idleTimeoutSeconds = number;
+            case "heartbeat.timeout" -> heartbeatTimeoutSeconds = number;
+            default -> throw new IllegalArgumentException("Unknown setting: " + name);
+        }
+        logger.info("Setting {} changed to {}", name, number);
+        for (Consumer<ServerSettings> listener : listeners) {
+            listener.accept(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "pool.size=" + poolSize +
+                "\ninflight.max=" + maxInFlight +
+                "\ninflight.perConnection=" + maxInFlightPerConnection +
+                "\nbusy.retryAfter=" + retryAfterMillis +
+                "\nidle.timeout=" + idleTimeoutSeconds +
+                "\nheartbeat.timeout=" + heartbeatTimeoutSeconds;
+    }
+}
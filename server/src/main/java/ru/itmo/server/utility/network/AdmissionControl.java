@@ -0,0 +1,65 @@
+package ru.itmo.server.utility.network;
+
+import ru.itmo.server.utility.ServerSettings;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounds the number of requests that are accepted for processing but not yet answered,
+ * both over the whole server and on every single connection.
+ * Requests above the limits are answered right away with a "server busy" response instead of being queued.
+ *
+ * @author zevtos
+ */
+class AdmissionControl {
+    private final ServerSettings settings;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Constructs an admission control reading its limits from the given settings.
+     *
+     * @param settings the live-tunable server settings
+     */
+    AdmissionControl(ServerSettings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Tries to admit a request received on a connection.
+     *
+     * @param connection the connection the request was received on
+     * @return true if the request may be processed; it must then be released with {@link #release}
+     */
+    boolean tryAcquire(Connection connection) {
+        AtomicInteger connectionInFlight = connection.getInFlight();
+        if (connectionInFlight.incrementAndGet() > settings.getMaxInFlightPerConnection()) {
+            connectionInFlight.decrementAndGet();
+            return false;
+        }
+        if (inFlight.incrementAndGet() > settings.getMaxInFlight()) {
+            inFlight.decrementAndGet();
+            connectionInFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Marks an admitted request as answered.
+     *
+     * @param connection the connection the request was received on
+     */
+    void release(Connection connection) {
+        connection.finishRequest();
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Returns the number of admitted requests not yet answered.
+     *
+     * @return the number of requests in flight
+     */
+    int inFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,165 @@
+package ru.itmo.server.utility.network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of direct byte buffers used on the server network path.
+ * Buffers are grouped into power-of-four size classes from 4 KiB to 1 MiB; a request is served
+ * from the smallest class that fits it. Larger requests get an unpooled heap buffer.
+ * In debug mode ({@code -Dserver.buffers.debug=true}) every buffer handed out is tracked together
+ * with the stack trace of its acquisition, buffers held for too long are reported as probable leaks,
+ * and releasing a buffer twice is reported as well.
+ *
+ * @author zevtos
+ */
+public class BufferPool {
+    private static final Logger logger = LoggerFactory.getLogger("BufferPool");
+    private static final int[] SIZE_CLASSES = {4 * 1024, 16 * 1024, 64 * 1024, 256 * 1024, 1024 * 1024};
+    private static final int RETAINED_BYTES_PER_CLASS = 16 * 1024 * 1024;
+    private static final long LEAK_THRESHOLD_MILLIS = 60_000;
+    private static final BufferPool instance = new BufferPool(Boolean.getBoolean("server.buffers.debug"));
+
+    private final Queue<ByteBuffer>[] free;
+    private final AtomicInteger[] freeCounts;
+    private final boolean debug;
+    private final Map<ByteBuffer, Acquisition> outstanding = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    /**
+     * Constructs a pool.
+     *
+     * @param debug whether buffers handed out should be tracked for leak detection
+     */
+    @SuppressWarnings("unchecked")
+    BufferPool(boolean debug) {
+        this.debug = debug;
+        this.free = new Queue[SIZE_CLASSES.length];
+        this.freeCounts = new AtomicInteger[SIZE_CLASSES.length];
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            free[i] = new ConcurrentLinkedQueue<>();
+            freeCounts[i] = new AtomicInteger();
+        }
+        if (debug) {
+            ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "buffer-leak-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reporter.scheduleAtFixedRate(() -> reportLeaks(LEAK_THRESHOLD_MILLIS),
+                    LEAK_THRESHOLD_MILLIS, LEAK_THRESHOLD_MILLIS, TimeUnit.MILLISECONDS);
+            logger.info("Buffer leak detection enabled");
+        }
+    }
+
+    /**
+     * Returns the pool shared by the whole server.
+     *
+     * @return the shared pool
+     */
+    public static BufferPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * Takes a cleared buffer with at least the requested capacity.
+     *
+     * @param minCapacity the number of bytes the caller needs
+     * @return a buffer with position 0 and limit equal to its capacity
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        int sizeClass = sizeClassOf(minCapacity);
+        if (sizeClass < 0) {
+            return ByteBuffer.allocate(minCapacity);
+        }
+        ByteBuffer buffer = free[sizeClass].poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(SIZE_CLASSES[sizeClass]);
+        } else {
+            freeCounts[sizeClass].decrementAndGet();
+        }
+        if (debug) {
+            outstanding.put(buffer, new Acquisition(System.currentTimeMillis(), new Throwable("Acquired here")));
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers that did not come from the pool are ignored.
+     *
+     * @param buffer the buffer that is no longer used
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) return;
+        int sizeClass = exactSizeClassOf(buffer.capacity());
+        if (sizeClass < 0) return;
+        if (debug && outstanding.remove(buffer) == null) {
+            logger.warn("Buffer released twice or not acquired from the pool", new Throwable("Released here"));
+            return;
+        }
+        buffer.clear();
+        if (freeCounts[sizeClass].incrementAndGet() * (long) SIZE_CLASSES[sizeClass] > RETAINED_BYTES_PER_CLASS) {
+            // The class already retains enough buffers, let this one be collected
+            freeCounts[sizeClass].decrementAndGet();
+            return;
+        }
+        free[sizeClass].add(buffer);
+    }
+
+    /**
+     * Returns the number of tracked buffers that were acquired and not yet released.
+     * Always 0 outside of debug mode.
+     *
+     * @return the number of outstanding buffers
+     */
+    public int outstanding() {
+        return outstanding.size();
+    }
+
+    /**
+     * Logs every tracked buffer held for longer than the given time together with the place it was acquired.
+     *
+     * @param olderThanMillis the age above which an outstanding buffer is considered leaked
+     */
+    public void reportLeaks(long olderThanMillis) {
+        long now = System.currentTimeMillis();
+        List<Acquisition> leaks = new ArrayList<>();
+        synchronized (outstanding) {
+            for (Acquisition acquisition : outstanding.values()) {
+                if (now - acquisition.time() > olderThanMillis) leaks.add(acquisition);
+            }
+        }
+        for (Acquisition leak : leaks) {
+            logger.warn("Buffer held for {} ms, probably leaked", now - leak.time(), leak.site());
+        }
+    }
+
+    private static int sizeClassOf(int capacity) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (capacity <= SIZE_CLASSES[i]) return i;
+        }
+        return -1;
+    }
+
+    private static int exactSizeClassOf(int capacity) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (capacity == SIZE_CLASSES[i]) return i;
+        }
+        return -1;
+    }
+
+    private record Acquisition(long time, Throwable site) {
+    }
+}
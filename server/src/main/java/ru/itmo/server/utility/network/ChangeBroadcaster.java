@@ -0,0 +1,122 @@
+package ru.itmo.server.utility.network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.itmo.general.network.ChangeNotice;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the notices of the changes of the collection on a UDP multicast group.
+ * One datagram reaches every client on the network, so the cost of a change for the server does not grow
+ * with the number of clients. Datagrams are sent by a single thread, in the order of the changes,
+ * and a datagram without notices is sent when nothing changes for {@link ChangeNotice#HEARTBEAT_MILLIS}.
+ * A datagram that cannot be sent is dropped: clients notice the gap in the numbers and fetch the changes over TCP.
+ *
+ * @author zevtos
+ */
+public class ChangeBroadcaster implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger("ChangeBroadcaster");
+    private final DatagramChannel channel;
+    private final InetSocketAddress group;
+    private final long epoch;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(ChangeNotice.MAX_DATAGRAM_SIZE);
+    private final ScheduledExecutorService executor;
+    private long lastSequence;
+    private long lastSentAt;
+
+    /**
+     * Opens the channel publishing on a multicast group.
+     *
+     * @param group            the address and port of the group
+     * @param networkInterface the interface to send from, or null for the one chosen by the system
+     * @param ttl              the number of routers a datagram may pass, 1 to stay on the local network
+     * @param epoch            the epoch of the journal of the changes
+     * @param lastSequence     the number of the last change already made
+     * @throws IOException if the channel cannot be opened
+     */
+    public ChangeBroadcaster(InetSocketAddress group, NetworkInterface networkInterface, int ttl,
+                             long epoch, long lastSequence) throws IOException {
+        this.group = group;
+        this.epoch = epoch;
+        this.lastSequence = lastSequence;
+        this.channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, ttl);
+        channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+        if (networkInterface != null) {
+            channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+        }
+        channel.configureBlocking(false);
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "change-broadcaster");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Проверяется чаще интервала, чтобы пауза после последней рассылки не растягивалась почти вдвое
+        long tick = ChangeNotice.HEARTBEAT_MILLIS / 5;
+        executor.scheduleWithFixedDelay(this::heartbeat, tick, tick, TimeUnit.MILLISECONDS);
+        logger.info("Change notices are published on {}", group);
+    }
+
+    /**
+     * Queues the notices of a change for sending. Does not block.
+     *
+     * @param notices the notices, numbered consecutively
+     */
+    public void publish(List<ChangeNotice> notices) {
+        try {
+            executor.execute(() -> send(notices));
+        } catch (RejectedExecutionException ignored) {
+            // The broadcaster is closed
+        }
+    }
+
+    private void send(List<ChangeNotice> notices) {
+        for (int from = 0; from < notices.size(); from += ChangeNotice.MAX_NOTICES) {
+            List<ChangeNotice> part = notices.subList(from, Math.min(notices.size(), from + ChangeNotice.MAX_NOTICES));
+            lastSequence = part.get(part.size() - 1).sequence();
+            sendDatagram(part);
+        }
+    }
+
+    private void heartbeat() {
+        if (System.nanoTime() - lastSentAt >= TimeUnit.MILLISECONDS.toNanos(ChangeNotice.HEARTBEAT_MILLIS)) {
+            sendDatagram(List.of());
+        }
+    }
+
+    private void sendDatagram(List<ChangeNotice> notices) {
+        buffer.clear();
+        ChangeNotice.write(buffer, epoch, lastSequence, notices);
+        buffer.flip();
+        try {
+            if (channel.send(buffer, group) == 0) {
+                logger.debug("Change notices up to {} dropped: the send buffer is full", lastSequence);
+            }
+        } catch (IOException e) {
+            logger.debug("Could not send change notices up to {}: {}", lastSequence, e.getMessage());
+        }
+        lastSentAt = System.nanoTime();
+    }
+
+    /**
+     * Stops publishing and closes the channel.
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        channel.close();
+    }
+}
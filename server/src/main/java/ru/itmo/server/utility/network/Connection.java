@@ -0,0 +1,426 @@
+package ru.itmo.server.utility.network;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.itmo.general.network.FrameDecoder;
+import ru.itmo.general.network.Handshake;
+import ru.itmo.general.network.Request;
+import ru.itmo.general.network.codec.PayloadCompressor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Per-connection state attached to the selection key of a client channel.
+ * Besides the frame decoder it holds the outbound queue: frames are written directly while the
+ * kernel accepts them, and the rest is queued and drained by the reactor once the channel is writable.
+ * When the queue grows above the high watermark, reading from the client is suspended until it
+ * drains below the low watermark, so a slow consumer cannot pile up unbounded responses.
+ * The queue may also hold {@link FileRegion}s, which are sent from the file and do not count against the watermarks.
+ * Once the client attaches a {@link SharedMemorySession}, the queue is drained into its response ring
+ * by the session thread instead of into the socket.
+ *
+ * @author zevtos
+ */
+class Connection {
+    /**
+     * Queued bytes above which reading from the client is suspended.
+     */
+    static final int HIGH_WATERMARK = Integer.getInteger("server.write.highWatermark", 4 * 1024 * 1024);
+
+    /**
+     * Queued bytes below which reading from the client is resumed.
+     */
+    static final int LOW_WATERMARK = Integer.getInteger("server.write.lowWatermark", 1024 * 1024);
+
+    /**
+     * Largest frame accepted from clients.
+     */
+    static final int MAX_FRAME_SIZE = Integer.getInteger("server.maxFrameSize", FrameDecoder.DEFAULT_MAX_FRAME_SIZE);
+
+    private static final Logger logger = LoggerFactory.getLogger("Connection");
+    private static final BufferPool bufferPool = BufferPool.getInstance();
+    @Getter
+    private final SelectionKey key;
+    @Getter
+    private final SocketChannel channel;
+    @Getter
+    private final FrameDecoder decoder = new FrameDecoder(MAX_FRAME_SIZE);
+    /**
+     * Lane running the requests of this connection one after another, in the order they were received.
+     */
+    @Getter
+    private final Lane lane;
+    /**
+     * Compressor negotiated with the client, or null if responses are sent uncompressed.
+     */
+    @Getter
+    private volatile PayloadCompressor compressor;
+    /**
+     * Compressors replaced while requests were in flight, whose responses may still be compressed with them;
+     * closed once no request is in flight.
+     */
+    private final List<PayloadCompressor> retiredCompressors = new ArrayList<>();
+    /**
+     * Features negotiated in the {@link Handshake}; clients that sent no hello keep the legacy ones.
+     */
+    @Getter
+    @Setter
+    private volatile int features = Handshake.LEGACY_FEATURES;
+    /**
+     * Largest frame the client accepts.
+     */
+    @Getter
+    @Setter
+    private volatile int peerMaxFrameSize = FrameDecoder.DEFAULT_MAX_FRAME_SIZE;
+    /**
+     * Number of requests of this connection admitted for processing and not yet answered.
+     */
+    @Getter
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /**
+     * The earliest failed request of the last stream of requests that failed on this connection.
+     */
+    private final AtomicReference<FailedRequest> streamFailure = new AtomicReference<>();
+    private final Deque<Object> outbound = new ArrayDeque<>();
+    private WritableByteChannel output;
+    private SharedMemorySession sharedMemory;
+    private long pendingBytes;
+    private boolean readSuspended;
+    /**
+     * Set once the server drains: no request is read from the client any more.
+     */
+    private boolean readStopped;
+    private boolean closed;
+    @Getter
+    private volatile long lastActivity = System.currentTimeMillis();
+    @Getter
+    @Setter
+    private volatile boolean heartbeatPending;
+
+    /**
+     * Constructs the state for a client channel registered with a reactor.
+     *
+     * @param key  the selection key of the client channel
+     * @param lane the lane running the requests of the client
+     */
+    Connection(SelectionKey key, Lane lane) {
+        this.key = key;
+        this.channel = (SocketChannel) key.channel();
+        this.output = channel;
+        this.lane = lane;
+    }
+
+    /**
+     * Sends a last frame over the socket and everything after it through a shared memory session.
+     * Only possible while nothing is queued for the socket, so that the order of the frames is kept.
+     *
+     * @param session the session
+     * @param last    the frame announcing the switch to the client
+     * @return true if the session is attached
+     */
+    synchronized boolean attach(SharedMemorySession session, ByteBuffer last) {
+        if (closed || !outbound.isEmpty() || sharedMemory != null) return false;
+        try {
+            // The socket buffer is empty, a frame of a few bytes is written at once
+            for (int attempt = 0; last.hasRemaining(); attempt++) {
+                if (attempt == 100) throw new IOException("Socket does not accept data");
+                channel.write(last);
+            }
+        } catch (IOException e) {
+            logger.error("Error sending data to client: {}", e.getMessage());
+            close();
+            return false;
+        }
+        sharedMemory = session;
+        output = session.getFile().responses();
+        return true;
+    }
+
+    /**
+     * Replaces the compressor negotiated with the client. The previous one is closed right away if no request
+     * is in flight, and otherwise once the last of them is {@linkplain #finishRequest finished}.
+     *
+     * @param next the new compressor, or null to send responses uncompressed
+     */
+    synchronized void replaceCompressor(PayloadCompressor next) {
+        PayloadCompressor previous = compressor;
+        compressor = next;
+        if (previous == null) return;
+        if (closed || inFlight.get() == 0) {
+            previous.close();
+        } else {
+            retiredCompressors.add(previous);
+        }
+    }
+
+    /**
+     * Marks a request of this connection as answered, and closes the replaced compressors once none is in flight.
+     */
+    void finishRequest() {
+        if (inFlight.decrementAndGet() == 0) {
+            closeRetiredCompressors();
+        }
+    }
+
+    /**
+     * Records the failure of a request belonging to a stream, so that the requests of the stream sent after it
+     * are skipped. The client streams on a connection it has checked out, so only the last stream is kept.
+     * A failure recorded out of order, as for a request rejected while earlier ones still wait in the lane,
+     * moves the mark back to the earlier request.
+     *
+     * @param request the failed request
+     */
+    void failStream(Request request) {
+        if (request.getStreamId() == 0) return;
+        FailedRequest failed = new FailedRequest(request.getStreamId(), request.getRequestId());
+        streamFailure.accumulateAndGet(failed, (current, next) ->
+                current != null && current.streamId() == next.streamId() && current.requestId() <= next.requestId()
+                        ? current : next);
+    }
+
+    /**
+     * Checks whether a request belongs to a stream in which an earlier request has failed.
+     *
+     * @param request the request
+     * @return true if the request must be skipped
+     */
+    boolean isStreamFailed(Request request) {
+        FailedRequest failed = streamFailure.get();
+        return failed != null && request.getStreamId() != 0 && request.getStreamId() == failed.streamId()
+                && request.getRequestId() > failed.requestId();
+    }
+
+    private synchronized void closeRetiredCompressors() {
+        if (inFlight.get() != 0) return;
+        for (PayloadCompressor retired : retiredCompressors) {
+            retired.close();
+        }
+        retiredCompressors.clear();
+    }
+
+    /**
+     * Checks whether reading requests is suspended because too many responses are queued.
+     *
+     * @return true if reading is suspended
+     */
+    synchronized boolean isReadSuspended() {
+        return readSuspended || readStopped;
+    }
+
+    /**
+     * Stops reading requests from the client for good, so that a draining server only finishes
+     * the requests already admitted. Requests the client sends afterwards are never executed,
+     * and the client sends them again to the next server.
+     */
+    synchronized void stopReading() {
+        if (readStopped) return;
+        readStopped = true;
+        if (!closed && key.isValid()) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Records that data has been received from the client, which also answers a pending heartbeat.
+     */
+    void recordActivity() {
+        lastActivity = System.currentTimeMillis();
+        heartbeatPending = false;
+    }
+
+    /**
+     * Checks whether the connection has been closed.
+     *
+     * @return true if the connection is closed
+     */
+    synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Sends a frame to the client without blocking.
+     * Whatever the socket does not accept right away is queued and written when the channel becomes writable.
+     * Pooled frames are returned to the {@link BufferPool} once they have been written or dropped.
+     *
+     * @param frame the encoded frame
+     */
+    synchronized void enqueue(ByteBuffer frame) {
+        if (!key.isValid()) {
+            bufferPool.release(frame);
+            return;
+        }
+        if (outbound.isEmpty()) {
+            try {
+                output.write(frame);
+            } catch (IOException e) {
+                logger.error("Error sending data to client: {}", e.getMessage());
+                bufferPool.release(frame);
+                close();
+                return;
+            }
+            if (!frame.hasRemaining()) {
+                bufferPool.release(frame);
+                return;
+            }
+        }
+        outbound.add(frame);
+        pendingBytes += frame.remaining();
+        awaitWritable();
+    }
+
+    /**
+     * Sends a frame whose payload is read from a file, after the given header, without blocking.
+     * Nothing else is sent between the header and the file.
+     *
+     * @param header the frame header, followed by the beginning of the payload
+     * @param body   the rest of the payload
+     */
+    synchronized void enqueue(ByteBuffer header, FileRegion body) {
+        enqueue(header);
+        if (!key.isValid() || closed) {
+            body.close();
+            return;
+        }
+        if (outbound.isEmpty()) {
+            try {
+                body.transferTo(output);
+            } catch (IOException e) {
+                logger.error("Error sending data to client: {}", e.getMessage());
+                body.close();
+                close();
+                return;
+            }
+            if (body.remaining() == 0) {
+                body.close();
+                return;
+            }
+        }
+        outbound.add(body);
+        awaitWritable();
+    }
+
+    private void awaitWritable() {
+        if (sharedMemory != null) {
+            // The session thread drains the queue into the ring
+            readSuspended |= pendingBytes > HIGH_WATERMARK;
+            sharedMemory.wakeup();
+            return;
+        }
+        int ops = key.interestOps() | SelectionKey.OP_WRITE;
+        if (pendingBytes > HIGH_WATERMARK && !readSuspended) {
+            readSuspended = true;
+            ops &= ~SelectionKey.OP_READ;
+            logger.debug("Outbound queue above high watermark, reading suspended");
+        }
+        key.interestOps(ops);
+        key.selector().wakeup();
+    }
+
+    /**
+     * Checks whether the connection has nothing left to finish: no request of the client is being processed
+     * and every response has been sent.
+     *
+     * @return true if the connection may be closed without losing anything
+     */
+    synchronized boolean isIdle() {
+        return inFlight.get() == 0 && outbound.isEmpty();
+    }
+
+    /**
+     * Writes queued frames until the queue is empty or the socket buffer is full.
+     * Called by the reactor when the channel is writable, or by the shared memory session thread.
+     *
+     * @return the number of bytes written
+     */
+    synchronized long flush() {
+        long total = 0;
+        try {
+            while (!outbound.isEmpty()) {
+                Object next = outbound.peek();
+                if (next instanceof FileRegion region) {
+                    total += region.transferTo(output);
+                    if (region.remaining() > 0) break;
+                } else {
+                    ByteBuffer frame = (ByteBuffer) next;
+                    int written = output.write(frame);
+                    pendingBytes -= written;
+                    total += written;
+                    if (frame.hasRemaining()) break;
+                }
+                release(outbound.poll());
+            }
+        } catch (IOException e) {
+            logger.error("Error sending data to client: {}", e.getMessage());
+            close();
+            return total;
+        }
+        if (sharedMemory != null) {
+            readSuspended &= pendingBytes >= LOW_WATERMARK;
+            return total;
+        }
+        int ops = key.interestOps();
+        if (outbound.isEmpty()) {
+            ops &= ~SelectionKey.OP_WRITE;
+        }
+        if (readSuspended && pendingBytes < LOW_WATERMARK) {
+            readSuspended = false;
+            if (!readStopped) ops |= SelectionKey.OP_READ;
+            logger.debug("Outbound queue below low watermark, reading resumed");
+        }
+        key.interestOps(ops);
+        return total;
+    }
+
+    /**
+     * Closes the client channel and drops everything still queued for it.
+     */
+    synchronized void close() {
+        if (closed) return;
+        closed = true;
+        ConnectionMonitor.getInstance().unregister(this);
+        Object next;
+        while ((next = outbound.poll()) != null) {
+            release(next);
+        }
+        pendingBytes = 0;
+        if (sharedMemory != null) {
+            sharedMemory.wakeup();
+        }
+        if (compressor != null) {
+            compressor.close();
+        }
+        for (PayloadCompressor retired : retiredCompressors) {
+            retired.close();
+        }
+        retiredCompressors.clear();
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.error("Error closing channel: {}", e.getMessage());
+        }
+    }
+
+    private static void release(Object outboundItem) {
+        if (outboundItem instanceof FileRegion region) {
+            region.close();
+        } else {
+            bufferPool.release((ByteBuffer) outboundItem);
+        }
+    }
+
+    private record FailedRequest(long streamId, long requestId) {
+    }
+}
@@ -0,0 +1,121 @@
+package ru.itmo.server.utility.network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.itmo.general.network.FrameEncoder;
+import ru.itmo.general.network.Handshake;
+import ru.itmo.general.network.Heartbeat;
+import ru.itmo.server.utility.ServerSettings;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps track of the open client connections and reaps the idle ones.
+ * Every connection has a check scheduled on a {@link TimingWheel}. When a connection has received nothing for
+ * the idle timeout, it is sent a heartbeat ping; if it still stays silent for the heartbeat timeout, it is closed.
+ * Reads only record the time of the last activity, so the wheel is touched once per timeout, not per request.
+ * Only clients that announced {@link Handshake#HEARTBEATS} in their handshake are pinged and closed:
+ * an older client reads from the socket only while it waits for a response, and could not answer a ping
+ * while its user is idle.
+ *
+ * @author zevtos
+ */
+public class ConnectionMonitor {
+    private static final Logger logger = LoggerFactory.getLogger("ConnectionMonitor");
+    private static final long REPORT_INTERVAL_SECONDS = 60;
+    private static final ConnectionMonitor instance = new ConnectionMonitor(ServerSettings.getInstance());
+
+    private final ServerSettings settings;
+    private final TimingWheel wheel = new TimingWheel("connection-monitor", 500, 512);
+    private final AtomicInteger open = new AtomicInteger();
+    private int lastReported;
+
+    /**
+     * Constructs a monitor using the timeouts of the given settings.
+     *
+     * @param settings the live-tunable server settings
+     */
+    ConnectionMonitor(ServerSettings settings) {
+        this.settings = settings;
+        wheel.schedule(this::report, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Returns the monitor shared by the whole server.
+     *
+     * @return the shared monitor
+     */
+    public static ConnectionMonitor getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the number of client connections currently open.
+     *
+     * @return the number of open connections
+     */
+    public int openConnections() {
+        return open.get();
+    }
+
+    /**
+     * Starts monitoring a freshly registered connection.
+     *
+     * @param connection the connection
+     */
+    void register(Connection connection) {
+        open.incrementAndGet();
+        scheduleCheck(connection, TimeUnit.SECONDS.toMillis(settings.getIdleTimeoutSeconds()));
+    }
+
+    /**
+     * Stops counting a connection that has been closed.
+     *
+     * @param connection the connection
+     */
+    void unregister(Connection connection) {
+        open.decrementAndGet();
+    }
+
+    private void scheduleCheck(Connection connection, long delayMillis) {
+        wheel.schedule(() -> check(connection), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void check(Connection connection) {
+        if (connection.isClosed()) return;
+        long idleTimeout = TimeUnit.SECONDS.toMillis(settings.getIdleTimeoutSeconds());
+        long idle = System.currentTimeMillis() - connection.getLastActivity();
+        if (!connection.isHeartbeatPending()) {
+            if (idle < idleTimeout) {
+                scheduleCheck(connection, idleTimeout - idle);
+                return;
+            }
+            if ((connection.getFeatures() & Handshake.HEARTBEATS) == 0) {
+                // Клиент без потока ввода-вывода не ответит на пинг, пока ждёт ввода пользователя
+                scheduleCheck(connection, idleTimeout);
+                return;
+            }
+            connection.setHeartbeatPending(true);
+            connection.enqueue(FrameEncoder.encode(new byte[]{Heartbeat.PING}));
+            scheduleCheck(connection, TimeUnit.SECONDS.toMillis(settings.getHeartbeatTimeoutSeconds()));
+            return;
+        }
+        if (connection.getInFlight().get() > 0) {
+            // Запрос, который ещё выполняется, не обрываем: его ответ клиент ждёт, а повтор применил бы его дважды
+            scheduleCheck(connection, TimeUnit.SECONDS.toMillis(settings.getHeartbeatTimeoutSeconds()));
+            return;
+        }
+        logger.info("Closing unresponsive connection, idle for {} ms", idle);
+        connection.close();
+    }
+
+    private void report() {
+        int current = open.get();
+        if (current != lastReported) {
+            logger.info("Open connections: {}", current);
+            lastReported = current;
+        }
+        wheel.schedule(this::report, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,62 @@
+package ru.itmo.server.utility.network;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A part of a file queued for sending to a client.
+ * It is written with {@link FileChannel#transferTo}, which lets the kernel copy the file into the socket
+ * without passing the data through the heap.
+ *
+ * @author zevtos
+ */
+class FileRegion {
+    private final FileChannel file;
+    private final long end;
+    private long position;
+
+    /**
+     * Constructs a region covering a whole file. The region takes ownership of the channel.
+     *
+     * @param file the open file
+     * @throws IOException if the size of the file cannot be read
+     */
+    FileRegion(FileChannel file) throws IOException {
+        this.file = file;
+        this.end = file.size();
+    }
+
+    /**
+     * Writes as much of the rest of the region as the target accepts.
+     *
+     * @param target the channel to write to
+     * @return the number of bytes written
+     * @throws IOException if reading the file or writing the target fails
+     */
+    long transferTo(WritableByteChannel target) throws IOException {
+        long written = file.transferTo(position, end - position, target);
+        position += written;
+        return written;
+    }
+
+    /**
+     * Returns the number of bytes not written yet.
+     *
+     * @return the remaining bytes
+     */
+    long remaining() {
+        return end - position;
+    }
+
+    /**
+     * Closes the file.
+     */
+    void close() {
+        try {
+            file.close();
+        } catch (IOException ignored) {
+            // Nothing was written to the file, there is nothing to lose
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package ru.itmo.server.utility.network;
+
+import ru.itmo.general.network.FrameDecoder;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An output stream that serializes a message straight into a pooled buffer, leaving room for the frame header.
+ * When the buffer fills up, the content moves to a buffer of the next size class.
+ *
+ * @author zevtos
+ */
+class FrameOutputStream extends OutputStream {
+    private static final int INITIAL_CAPACITY = 4096;
+    private final BufferPool pool;
+    private ByteBuffer buffer;
+
+    /**
+     * Constructs a stream backed by buffers of the given pool.
+     *
+     * @param pool the pool the buffers are taken from
+     */
+    FrameOutputStream(BufferPool pool) {
+        this.pool = pool;
+        this.buffer = pool.acquire(INITIAL_CAPACITY);
+        this.buffer.position(FrameDecoder.HEADER_SIZE);
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(1);
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(len);
+        buffer.put(b, off, len);
+    }
+
+    /**
+     * Completes the frame header and hands the buffer over to the caller, who becomes responsible for releasing it.
+     *
+     * @return the frame, ready for writing
+     */
+    ByteBuffer toFrame() {
+        ByteBuffer frame = buffer;
+        buffer = null;
+        frame.putInt(0, frame.position() - FrameDecoder.HEADER_SIZE);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Returns the buffer to the pool without producing a frame, e.g. after a serialization error.
+     */
+    void discard() {
+        pool.release(buffer);
+        buffer = null;
+    }
+
+    private void ensureCapacity(int length) {
+        if (buffer.remaining() >= length) return;
+        int required = buffer.position() + length;
+        ByteBuffer larger = pool.acquire(Math.max(required, buffer.capacity() * 2));
+        buffer.flip();
+        larger.put(buffer);
+        pool.release(buffer);
+        buffer = larger;
+    }
+}
@@ -4,56 +4,125 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ru.itmo.general.managers.CommandManager;
 import ru.itmo.general.models.User;
+import ru.itmo.general.network.Deadline;
+import ru.itmo.general.network.Handshake;
 import ru.itmo.general.network.Request;
 import ru.itmo.general.network.Response;
+import ru.itmo.general.network.codec.Codec;
 import ru.itmo.server.dao.UserDAO;
+import ru.itmo.server.managers.IdempotencyCache;
+import ru.itmo.server.managers.SessionManager;
+import ru.itmo.server.managers.SnapshotManager;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.ObjectInputStream;
-import java.nio.channels.SelectionKey;
+import java.io.IOException;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 /**
- * Handles incoming requests from clients on a separate thread.
+ * Handles incoming requests from clients. Handlers are tasks run by the {@link RequestExecutor}.
+ * A request with a timeout gets a {@link Deadline} counted from the moment its frame was read;
+ * requests whose deadline passes while they wait in the queue are dropped without being executed,
+ * and no response is sent after the deadline, since the client no longer waits for it.
+ * Cheap read-only commands authenticated by a session token may instead be {@linkplain #runInline() run inline}
+ * by the thread that has read them.
+ * Once a request belonging to a stream fails, the requests of the stream sent after it are answered
+ * with {@link Response#STREAM_ABORTED} without being executed.
  *
  * @author zevtos
  */
-class Handler extends Thread {
+class Handler implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger("Handler");
+    private final Connection connection;
     private final SocketChannel clientSocketChannel;
-    private final ByteArrayOutputStream byteArrayOutputStream;
-    private final SelectionKey key;
+    private final byte[] requestBytes;
+    private final Codec codec;
     private final UserDAO userDAO;
+    private final Executor batchExecutor;
+    private final SessionManager sessionManager = SessionManager.getInstance();
+    private final long receivedAt = System.nanoTime();
+    private Request request;
+    private Deadline deadline;
 
     /**
      * Constructs a new Handler object.
      *
-     * @param clientSocketChannel   The socket channel connected to the client.
-     * @param byteArrayOutputStream The output stream containing the client's request.
-     * @param key                   The selection key associated with the client's channel.
-     * @param userDAO               The data access object for managing user data.
+     * @param connection    The state of the connection the request was received on.
+     * @param requestBytes  The payload of the frame holding the request.
+     * @param userDAO       The data access object for managing user data.
+     * @param batchExecutor Runs the helpers executing the requests of a parallel batch.
      */
     public Handler(
-            SocketChannel clientSocketChannel,
-            ByteArrayOutputStream byteArrayOutputStream,
-            SelectionKey key,
-            UserDAO userDAO) {
-        this.clientSocketChannel = clientSocketChannel;
-        this.byteArrayOutputStream = byteArrayOutputStream;
-        this.key = key;
+            Connection connection,
+            byte[] requestBytes,
+            UserDAO userDAO,
+            Executor batchExecutor) {
+        this.connection = connection;
+        this.clientSocketChannel = connection.getChannel();
+        this.requestBytes = requestBytes;
+        this.codec = Codec.of(requestBytes);
         this.userDAO = userDAO;
+        this.batchExecutor = batchExecutor;
+    }
+
+    /**
+     * Runs the request right away if it is authenticated by a session token and its command is
+     * {@linkplain CommandManager#isInline(String) inline}, sparing it the hop to the executor.
+     * Called on the thread that has read the request, so nothing done here may block: the session is checked
+     * in memory and the response goes through the outbound queue of the connection.
+     *
+     * @return true if the request has been answered, false if it has to be run by the executor.
+     */
+    boolean runInline() {
+        Request decoded;
+        try {
+            decoded = decode();
+        } catch (Exception e) {
+            // Ошибку декодирования сообщит run() в исполнителе
+            return false;
+        }
+        if (decoded.getToken() == null || !CommandManager.isInline(decoded.getCommand())) {
+            return false;
+        }
+        run();
+        return true;
+    }
+
+    private Request decode() throws IOException {
+        if (request == null) {
+            request = (Request) codec.decode(requestBytes);
+            // Идентификатор пользователя задаёт только сервер, после проверки пароля или сессии
+            request.setUserId(null);
+        }
+        return request;
     }
 
     @Override
     public void run() {
+        Request request = null;
         try {
-            byte[] requestBytes = byteArrayOutputStream.toByteArray();
-            ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(requestBytes));
-            Request request = (Request) objectInputStream.readObject();
+            request = decode();
+            if (request.getTimeoutMillis() > 0) {
+                deadline = Deadline.after(receivedAt, request.getTimeoutMillis());
+                if (deadline.isExpired()) {
+                    logger.debug("Dropping request {}: deadline passed in the queue", request.getRequestId());
+                    connection.failStream(request);
+                    return;
+                }
+                Deadline.set(deadline);
+            }
+            if (connection.isStreamFailed(request)) {
+                sendResponse(request, new Response(false, Response.STREAM_ABORTED));
+                return;
+            }
             if ("exit".equals(request.getCommand())) {
                 logger.info("Client {} terminated", clientSocketChannel.getRemoteAddress());
-                clientSocketChannel.close();
+                connection.close();
+                return;
+            }
+
+            if (request.getToken() != null) {
+                handleSessionRequest(request);
                 return;
             }
 
@@ -64,18 +133,16 @@ class Handler extends Thread {
 
             if (user == null && !"register".equals(request.getCommand()) && !"login".equals(request.getCommand())) {
                 // User is not registered and not attempting to login or register
-                sendUnauthorizedResponse(clientSocketChannel);
+                sendUnauthorizedResponse(request);
             } else {
                 handleRequest(request, user);
             }
         } catch (Exception e) {
             logger.error("Error processing request: {}", e.getMessage());
-            sendErrorResponse(clientSocketChannel);
+            sendErrorResponse(request);
+        } finally {
+            Deadline.clear();
         }
-        // Set interest back to OP_READ after parsing is complete
-        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
-        // Wake up the selector to update interest operations
-        key.selector().wakeup();
     }
 
     /**
@@ -85,33 +152,162 @@ class Handler extends Thread {
      * @param user    The user associated with the request, or null if not authenticated.
      */
     private void handleRequest(Request request, User user) {
-        if (user != null && userDAO.verifyUserPassword(user, request.getPassword())) {
-            request.setUserId(user.getId());
-        } else if (user != null && !("login".equals(request.getCommand()) || "register".equals(request.getCommand()))) {
-            sendUnauthorizedResponse(clientSocketChannel);
+        boolean verified = user != null && userDAO.verifyUserPassword(user, request.getPassword());
+        Response response = authenticate(request, user, verified, this::execute);
+        if (response == null) {
+            sendUnauthorizedResponse(request);
+        } else {
+            sendResponse(request, response);
+        }
+    }
+
+    /**
+     * Executes a request authenticated by the login and password of the user.
+     * A session is opened, and its token returned with the response, only for a user the server has verified:
+     * the user whose password matches, or the user a successful {@code login} or {@code register} returned.
+     * The user id sent by the client is never trusted.
+     *
+     * @param request  The request object received from the client.
+     * @param user     The user with the login of the request, or null if there is none.
+     * @param verified Whether the password of the request matches the one of the user.
+     * @param executor Executes the command of the request.
+     * @return The response to the request, or null if the request is not authorized.
+     */
+    static Response authenticate(Request request, User user, boolean verified, Function<Request, Response> executor) {
+        String command = request.getCommand();
+        request.setUserId(verified ? user.getId() : null);
+        if (user != null && !verified && !"register".equals(command)) {
+            // Неверный пароль: вход не выполняется, а register сам ответит, что пользователь уже существует
+            return null;
+        }
+        Response response = executor.apply(request);
+        Integer userId = request.getUserId();
+        if (userId == null && response.isSuccess()
+                && ("login".equals(command) || "register".equals(command))
+                && response.getData() instanceof Integer id) {
+            userId = id;
+        }
+        if (userId != null) {
+            // Credentials were verified, the following requests may use a session token instead
+            response.setToken(SessionManager.getInstance().open(userId, request.getLogin()));
+        }
+        return response;
+    }
+
+    /**
+     * Handles a request authenticated by a session token, without querying the database.
+     *
+     * @param request The request object received from the client.
+     */
+    private void handleSessionRequest(Request request) {
+        SessionManager.Session session = sessionManager.validate(request.getToken());
+        if (session == null) {
+            sendResponse(request, new Response(false, Response.SESSION_EXPIRED));
+            return;
+        }
+        request.setUserId(session.userId());
+        request.setLogin(session.username());
+        if ("download_snapshot".equals(request.getCommand()) && sendSnapshot(request)) {
+            return;
+        }
+        sendResponse(request, execute(request));
+    }
+
+    /**
+     * Executes the command of an authenticated request. A request of a command changing the collection
+     * which carries an idempotency key is applied only once: its replays get the response of the first execution.
+     * The requests of a batch are executed the same way, in parallel only as far as the in-flight limits allow.
+     *
+     * @param request The request object received from the client.
+     * @return The response to the request.
+     */
+    private Response execute(Request request) {
+        if ("batch".equals(request.getCommand())) {
+            return CommandManager.handleBatch(request, this::execute, batchExecutor);
+        }
+        if (request.getIdempotencyKey() == null || !CommandManager.isMutating(request.getCommand())) {
+            return CommandManager.handle(request);
+        }
+        return IdempotencyCache.getInstance().execute(request, CommandManager::handle);
+    }
+
+    /**
+     * Answers {@code download_snapshot} straight from the snapshot file of the current version of the collection,
+     * if the client negotiated snapshot frames in its handshake.
+     *
+     * @param request The request object received from the client.
+     * @return true if the request has been answered, false if it has to be executed as a usual command.
+     */
+    private boolean sendSnapshot(Request request) {
+        SnapshotManager snapshotManager = SnapshotManager.getInstance();
+        if (snapshotManager == null) return false;
+        if ((connection.getFeatures() & Handshake.SNAPSHOT_FRAMES) == 0) return false;
+        if (deadline != null && deadline.isExpired()) return true;
+        try {
+            return TCPWriter.sendSnapshot(connection, request.getRequestId(), snapshotManager.open(codec));
+        } catch (IOException e) {
+            logger.error("Error sending snapshot: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Answers the request without processing it, because the server is overloaded.
+     * Called on the reactor thread instead of running the handler.
+     *
+     * @param retryAfterMillis The delay after which the client may retry the request.
+     */
+    void rejectBusy(int retryAfterMillis) {
+        Request request = null;
+        try {
+            request = decode();
+        } catch (Exception e) {
+            logger.error("Error reading rejected request: {}", e.getMessage());
+        }
+        sendResponse(request, new Response(false, Response.SERVER_BUSY, retryAfterMillis));
+    }
+
+    /**
+     * Sends a response to the client, tagged with the identifier of the request it answers.
+     * A failure, or a response dropped after the deadline, stops the stream of the request, except an expired
+     * session, after which the client sends the request again with its credentials.
+     *
+     * @param request  The request being answered, or null if it could not be read.
+     * @param response The response to send.
+     */
+    private void sendResponse(Request request, Response response) {
+        boolean expired = deadline != null && deadline.isExpired();
+        if (request != null && (expired || !response.isSuccess() && !Response.SESSION_EXPIRED.equals(response.getMessage()))) {
+            connection.failStream(request);
+        }
+        if (expired) {
+            logger.debug("Dropping response to request {}: deadline passed", request.getRequestId());
+            return;
+        }
+        if (request != null) {
+            response.setRequestId(request.getRequestId());
         }
-        Response response = CommandManager.handle(request);
-        TCPWriter.sendResponse(clientSocketChannel, response);
+        TCPWriter.sendResponse(connection, response, codec);
     }
 
     /**
      * Sends an unauthorized response to the client, indicating that authentication is required.
      *
-     * @param channel The socket channel to send the response to.
+     * @param request The request being answered.
      */
-    private void sendUnauthorizedResponse(SocketChannel channel) {
+    private void sendUnauthorizedResponse(Request request) {
         Response response = new Response(false, "Вы не вошли в систему." + '\n' +
                 "Введите register для регистрации или login для входа");
-        TCPWriter.sendResponse(channel, response);
+        sendResponse(request, response);
     }
 
     /**
      * Sends an error response to the client, indicating that the request was invalid.
      *
-     * @param channel The socket channel to send the response to.
+     * @param request The request being answered, or null if it could not be read.
      */
-    private void sendErrorResponse(SocketChannel channel) {
+    private void sendErrorResponse(Request request) {
         Response response = new Response(false, "Invalid request");
-        TCPWriter.sendResponse(channel, response);
+        sendResponse(request, response);
     }
 }
@@ -0,0 +1,85 @@
+package ru.itmo.server.utility.network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An execution lane: runs the tasks given to it one at a time, in the order they were given,
+ * on the threads of a shared executor. Every connection has its own lane, so the requests of a client
+ * are processed in the order they were sent, while the requests of different clients run in parallel.
+ * A lane occupies at most one thread of the executor and gives it back after {@link #BATCH} tasks,
+ * so that a busy client cannot starve the others.
+ *
+ * @author zevtos
+ */
+class Lane {
+    /**
+     * Number of tasks run in a row before the thread is handed over to other lanes.
+     */
+    static final int BATCH = 16;
+
+    private static final Logger logger = LoggerFactory.getLogger("Lane");
+    private final Executor executor;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * Constructs a lane running its tasks on the given executor.
+     *
+     * @param executor the shared executor
+     */
+    Lane(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Queues a task behind the tasks already given to the lane.
+     *
+     * @param task the task
+     * @throws RejectedExecutionException if the lane was idle and the executor refused to run it;
+     *                                    the task is not queued in that case
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                tasks.remove(task);
+                scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            for (int i = 0; i < BATCH; i++) {
+                Runnable task = tasks.poll();
+                if (task == null) break;
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    logger.error("Error in lane task: {}", e.getMessage(), e);
+                }
+            }
+            if (tasks.isEmpty()) {
+                scheduled.set(false);
+                // A task may have been queued after the check, while the lane still looked scheduled
+                if (tasks.isEmpty() || !scheduled.compareAndSet(false, true)) return;
+            }
+            try {
+                executor.execute(this::drain);
+                return;
+            } catch (RejectedExecutionException e) {
+                // The executor is saturated: keep going on this thread rather than stall the lane
+            }
+        }
+    }
+}
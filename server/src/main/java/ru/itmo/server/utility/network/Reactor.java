@@ -0,0 +1,151 @@
+package ru.itmo.server.utility.network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A worker reactor: owns a selector and runs its own event loop for the client channels assigned to it.
+ * Readable channels are read directly on the reactor thread, so no interest toggling or cross-thread
+ * wakeups are needed on the read path.
+ * When the server shuts down, the reactor {@linkplain #drain drains}: it stops reading requests, finishes
+ * the ones already admitted and closes each connection once nothing is in progress and nothing is left to send.
+ *
+ * @author zevtos
+ */
+class Reactor implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger("Reactor");
+    /**
+     * How often a draining reactor looks for connections to close.
+     */
+    private static final long DRAIN_POLL_MILLIS = 20;
+    private final Selector selector;
+    private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+    private final TCPReader reader;
+    private final RequestExecutor requestExecutor;
+    private final CountDownLatch drained = new CountDownLatch(1);
+    private volatile boolean draining;
+    private volatile long drainDeadline;
+
+    /**
+     * Constructs a reactor with a fresh selector.
+     *
+     * @param requestExecutor  the executor running the handlers of the requests read by this reactor
+     * @param admissionControl the limits on requests in flight, shared by all reactors
+     * @throws IOException if the selector cannot be opened
+     */
+    Reactor(RequestExecutor requestExecutor, AdmissionControl admissionControl) throws IOException {
+        this.selector = Selector.open();
+        this.requestExecutor = requestExecutor;
+        this.reader = new TCPReader(admissionControl, requestExecutor);
+    }
+
+    /**
+     * Hands a freshly accepted channel over to this reactor.
+     * The channel is registered by the reactor thread itself on its next loop iteration.
+     *
+     * @param channel the non-blocking client channel
+     */
+    void register(SocketChannel channel) {
+        pendingChannels.add(channel);
+        selector.wakeup();
+    }
+
+    /**
+     * Starts draining: no more requests are read from the connections, and every connection is closed once
+     * the requests already admitted on it are answered and their responses sent. After the deadline a connection
+     * is closed as soon as its requests are answered, even if its client has not read the responses.
+     * The event loop ends when no connection is left.
+     *
+     * @param deadlineNanos the moment, measured by {@link System#nanoTime()}, after which unsent responses are dropped
+     */
+    void drain(long deadlineNanos) {
+        drainDeadline = deadlineNanos;
+        draining = true;
+        selector.wakeup();
+    }
+
+    /**
+     * Waits until the reactor has closed all its connections.
+     *
+     * @param timeoutMillis the maximum time to wait
+     * @return true if the reactor is drained
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    boolean awaitDrained(long timeoutMillis) throws InterruptedException {
+        return drained.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs the event loop until the thread is interrupted or the reactor is drained.
+     */
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                selector.select(draining ? DRAIN_POLL_MILLIS : 0);
+            } catch (IOException e) {
+                logger.error("Error selecting thread: {}", e.getMessage());
+                continue;
+            }
+            registerPending();
+            for (SelectionKey key : selector.selectedKeys()) {
+                if (key.isValid() && key.isWritable()) {
+                    ((Connection) key.attachment()).flush();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    reader.readRequest(key);
+                }
+            }
+            selector.selectedKeys().clear();
+            if (draining && closeQuietConnections()) {
+                drained.countDown();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops reading from every connection and closes those with nothing left to finish. After the drain deadline,
+     * responses the client does not read are not waited for any more, but requests in progress still are:
+     * a request is never cut off while it is executed.
+     *
+     * @return true if no connection is left open
+     */
+    private boolean closeQuietConnections() {
+        boolean late = System.nanoTime() - drainDeadline >= 0;
+        int open = 0;
+        for (SelectionKey key : selector.keys()) {
+            if (!(key.attachment() instanceof Connection connection) || connection.isClosed()) continue;
+            connection.stopReading();
+            if (connection.isIdle() || late && connection.getInFlight().get() == 0) {
+                connection.close();
+            } else {
+                open++;
+            }
+        }
+        return open == 0 && pendingChannels.isEmpty();
+    }
+
+    private void registerPending() {
+        SocketChannel channel;
+        while ((channel = pendingChannels.poll()) != null) {
+            try {
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                Connection connection = new Connection(key, requestExecutor.newLane());
+                key.attach(connection);
+                ConnectionMonitor.getInstance().register(connection);
+            } catch (IOException e) {
+                logger.error("Error registering channel: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package ru.itmo.server.utility.network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.*;
+
+/**
+ * Runs request handlers according to the configured execution mode.
+ * Handlers reach it through the {@link Lane} of their connection, which keeps the requests of one client in order.
+ * In pool mode, handlers wait in a bounded queue ({@code -Dserver.queue.capacity}, 1024 by default);
+ * when it is full, {@link #execute} rejects the handler instead of letting the backlog grow.
+ *
+ * @author zevtos
+ */
+public class RequestExecutor {
+    private static final Logger logger = LoggerFactory.getLogger("RequestExecutor");
+    private static final int QUEUE_CAPACITY = Integer.getInteger("server.queue.capacity", 1024);
+    private final Mode mode;
+    private final Executor executor;
+
+    /**
+     * Constructs an executor for the specified mode.
+     *
+     * @param mode     The way request handlers are run.
+     * @param poolSize The number of platform threads used in {@link Mode#POOL} mode.
+     */
+    public RequestExecutor(Mode mode, int poolSize) {
+        Mode effectiveMode = mode;
+        Executor effectiveExecutor = null;
+        if (mode == Mode.VIRTUAL) {
+            effectiveExecutor = newVirtualThreadPerTaskExecutor();
+            if (effectiveExecutor == null) {
+                logger.warn("Virtual threads are not supported by this JVM, falling back to a pool of {} threads", poolSize);
+                effectiveMode = Mode.POOL;
+            }
+        }
+        if (effectiveMode == Mode.POOL) {
+            int threads = Math.max(1, poolSize);
+            effectiveExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(QUEUE_CAPACITY));
+        } else if (effectiveMode == Mode.DIRECT) {
+            effectiveExecutor = Runnable::run;
+        }
+        this.mode = effectiveMode;
+        this.executor = effectiveExecutor;
+        logger.info("Requests are executed in {} mode", this.mode);
+    }
+
+    /**
+     * Runs a request handler.
+     *
+     * @param handler The task processing a request.
+     * @throws RejectedExecutionException if the queue of waiting handlers is full.
+     */
+    public void execute(Runnable handler) {
+        executor.execute(handler);
+    }
+
+    /**
+     * Creates a lane running its tasks one at a time, in order, on this executor.
+     *
+     * @return A new lane.
+     */
+    Lane newLane() {
+        return new Lane(this::execute);
+    }
+
+    /**
+     * Changes the number of threads running handlers. Has no effect outside of {@link Mode#POOL} mode.
+     *
+     * @param poolSize The new number of threads.
+     */
+    public void setPoolSize(int poolSize) {
+        if (!(executor instanceof ThreadPoolExecutor pool) || poolSize <= 0) return;
+        if (poolSize > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(poolSize);
+            pool.setCorePoolSize(poolSize);
+        } else {
+            pool.setCorePoolSize(poolSize);
+            pool.setMaximumPoolSize(poolSize);
+        }
+        logger.info("Request pool resized to {} threads", poolSize);
+    }
+
+    /**
+     * Returns the execution mode actually in use.
+     *
+     * @return The execution mode.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Looks up {@code Executors.newVirtualThreadPerTaskExecutor()}, which only exists on JDK 21 and later.
+     *
+     * @return The executor, or null if the running JVM has no virtual threads.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The ways a request handler can be run.
+     */
+    public enum Mode {
+        POOL,     // Fixed pool of platform threads with a bounded queue
+        VIRTUAL,  // A new virtual thread per request
+        DIRECT    // Directly on the reactor thread that read the request
+    }
+}
@@ -0,0 +1,108 @@
+package ru.itmo.server.utility.network;
+
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ru.itmo.general.network.FrameDecoder;
+import ru.itmo.general.network.FrameEncoder;
+import ru.itmo.general.network.shm.SharedMemoryFile;
+import ru.itmo.general.network.shm.SharedMemoryHandshake;
+import ru.itmo.general.network.shm.SharedMemoryRing;
+
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The server side of a connection switched to a {@link SharedMemoryFile}.
+ * A dedicated thread reads the frames of the client from the request ring and hands them to the same
+ * {@link TCPReader#handleFrame} as frames read from sockets, and drains the outbound queue of the connection
+ * into the response ring. The socket of the connection stays open: when it is closed, the session ends.
+ *
+ * @author zevtos
+ */
+class SharedMemorySession implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger("SharedMemorySession");
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private final Connection connection;
+    @Getter
+    private final SharedMemoryFile file;
+    private final TCPReader reader;
+    private final FrameDecoder decoder = new FrameDecoder();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private volatile Thread thread;
+
+    /**
+     * Constructs a session of a connection.
+     *
+     * @param connection the connection
+     * @param file       the shared memory file named by the client
+     * @param reader     the reader handling the frames
+     */
+    SharedMemorySession(Connection connection, SharedMemoryFile file, TCPReader reader) {
+        this.connection = connection;
+        this.file = file;
+        this.reader = reader;
+    }
+
+    /**
+     * Tells the client the file is accepted, switches the connection to it and starts the session thread.
+     *
+     * @return true if the connection has been switched
+     */
+    boolean attach() {
+        if (!connection.attach(this, FrameEncoder.encode(SharedMemoryHandshake.attached(true)))) return false;
+        Thread worker = new Thread(this, "shm-" + file.getPath().getFileName());
+        worker.setDaemon(true);
+        thread = worker;
+        worker.start();
+        return true;
+    }
+
+    /**
+     * Wakes the session thread up if it is parked, because something has been queued for the client.
+     */
+    void wakeup() {
+        Thread worker = thread;
+        if (worker != null) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    @Override
+    public void run() {
+        SharedMemoryRing requests = file.requests();
+        int idleRounds = 0;
+        try {
+            while (!connection.isClosed()) {
+                boolean progress = false;
+                if (!connection.isReadSuspended() && requests.read(buffer) > 0) {
+                    connection.recordActivity();
+                    buffer.flip();
+                    decoder.feed(buffer);
+                    buffer.clear();
+                    byte[] frame;
+                    while ((frame = decoder.poll()) != null) {
+                        reader.handleFrame(connection, frame);
+                    }
+                    progress = true;
+                }
+                if (connection.flush() > 0) {
+                    progress = true;
+                }
+                idleRounds = progress ? 0 : idleRounds + 1;
+                if (!progress) {
+                    SharedMemoryRing.idle(idleRounds);
+                }
+            }
+        } catch (StreamCorruptedException e) {
+            logger.error("Invalid data in shared memory: {}", e.getMessage());
+            connection.close();
+        } catch (RuntimeException e) {
+            // Без потока сессии кольца никто не читает: закрываем сокет, чтобы клиент не ждал вечно
+            logger.error("Shared memory session {} failed", file.getPath(), e);
+            connection.close();
+        }
+        logger.debug("Shared memory session {} ended", file.getPath());
+    }
+}
@@ -2,86 +2,268 @@ package ru.itmo.server.utility.network;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.itmo.general.network.FrameEncoder;
+import ru.itmo.general.network.Handshake;
+import ru.itmo.general.network.Heartbeat;
+import ru.itmo.general.network.codec.Compression;
+import ru.itmo.general.network.codec.PayloadCompressor;
+import ru.itmo.general.network.shm.SharedMemoryFile;
+import ru.itmo.general.network.shm.SharedMemoryHandshake;
 import ru.itmo.server.dao.UserDAO;
+import ru.itmo.server.utility.ServerSettings;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
- * A runnable task for reading incoming requests from a client's socket channel.
- * It reads data from the channel, parses it, and delegates further processing to a handler.
+ * Reads incoming requests from a client's socket channel on the thread of the reactor owning the channel.
+ * It feeds the data into the frame decoder of the connection and delegates complete frames to a handler.
  *
  * @author zevtos
  */
-public class TCPReader implements Runnable {
+public class TCPReader {
     private static final Logger logger = LoggerFactory.getLogger("TCPReader");
     private static final UserDAO userDAO = new UserDAO();
-    private final SelectionKey key;
-
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
     /**
-     * Constructs a TCPReader with the given selection key.
-     *
-     * @param key The selection key associated with the client's socket channel.
+     * Largest request that may be executed inline on the reading thread; 0 sends every request to the executor.
      */
-    public TCPReader(SelectionKey key) {
-        this.key = key;
-    }
+    static final int INLINE_MAX_REQUEST_SIZE = Integer.getInteger("server.inline.maxRequestSize", 1024);
+    private final BufferPool bufferPool = BufferPool.getInstance();
+    private final AdmissionControl admissionControl;
+    private final RequestExecutor requestExecutor;
+    private final ServerSettings settings = ServerSettings.getInstance();
 
     /**
-     * Reads data from the client's socket channel and delegates further processing to a handler.
-     * If parsing is complete, it sets the interest back to OP_READ and wakes up the selector.
+     * Constructs a TCPReader that passes complete requests to the lanes of their connections.
+     *
+     * @param admissionControl The limits on requests in flight.
+     * @param requestExecutor  The executor running the helpers of parallel batches.
      */
-    @Override
-    public void run() {
-        if (!readRequest(key)) {
-            // Set interest back to OP_READ after parsing is complete
-            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
-            // Wake up the selector to update interest operations
-            key.selector().wakeup();
-        }
+    TCPReader(AdmissionControl admissionControl, RequestExecutor requestExecutor) {
+        this.admissionControl = admissionControl;
+        this.requestExecutor = requestExecutor;
     }
 
     /**
-     * Reads the incoming request from the client's socket channel.
+     * Reads the available bytes from the client's socket channel into the frame decoder of the connection.
      *
      * @param key The selection key associated with the client's socket channel.
-     * @return true if the reading and parsing of the request is successful, false otherwise.
+     * @return true if at least one complete request was handed to a handler, false otherwise.
      */
     public boolean readRequest(SelectionKey key) {
-        SocketChannel clientSocketChannel = (SocketChannel) key.channel();
-        ByteBuffer buffer = ByteBuffer.allocate(8192);
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        Connection connection = (Connection) key.attachment();
+        SocketChannel clientSocketChannel = connection.getChannel();
+        ByteBuffer buffer = bufferPool.acquire(READ_BUFFER_SIZE);
         int bytesRead;
         try {
             logger.debug("Reading request from {}", clientSocketChannel.getRemoteAddress());
             while ((bytesRead = clientSocketChannel.read(buffer)) > 0) {
+                connection.recordActivity();
                 buffer.flip();
-                byteArrayOutputStream.write(buffer.array(), 0, buffer.limit());
+                connection.getDecoder().feed(buffer);
                 buffer.clear();
             }
             if (bytesRead == -1) {
                 // Connection closed by client
-                key.cancel();
-                clientSocketChannel.close();
+                connection.close();
                 logger.error("Client disconnected");
                 return false;
             }
         } catch (IOException e) {
             logger.error("Error reading data: {}", e.getMessage());
-            key.cancel();
-            try {
-                logger.error("Closing channel: {}", clientSocketChannel.getRemoteAddress());
-                clientSocketChannel.close();
-            } catch (IOException ce) {
-                logger.error("Error closing channel: {}", ce.getMessage());
-            }
+            connection.close();
+            return false;
+        } finally {
+            bufferPool.release(buffer);
+        }
+        if (!connection.getDecoder().hasFrame()) {
+            // Only a part of the next frame has arrived, wait for the rest
             return false;
         }
-        // Start a new handler to process the request
-        new Handler(clientSocketChannel, byteArrayOutputStream, key, userDAO).start();
+        byte[] frame;
+        while ((frame = connection.getDecoder().poll()) != null) {
+            handleFrame(connection, frame);
+        }
         return true;
     }
+
+    /**
+     * Handles a complete frame received from a client, over the socket or through shared memory.
+     * Control frames are answered right away; requests are handed over to their own handlers,
+     * which run in order on the lane of the connection, unless they are cheap enough to run inline.
+     *
+     * @param connection The connection the frame was received on.
+     * @param frame      The payload of the frame.
+     */
+    void handleFrame(Connection connection, byte[] frame) {
+        if (Handshake.isHello(frame)) {
+            negotiate(connection, frame);
+        } else if (Compression.isOffer(frame)) {
+            acceptCompression(connection, frame);
+        } else if (Heartbeat.isPing(frame)) {
+            connection.enqueue(FrameEncoder.encode(new byte[]{Heartbeat.PONG}));
+        } else if (SharedMemoryHandshake.isAttach(frame)) {
+            attachSharedMemory(connection, frame);
+        } else if (!Heartbeat.isPong(frame)) {
+            Handler handler = new Handler(connection, frame, userDAO, task -> runBatched(connection, task));
+            if (!runInline(connection, frame, handler)) {
+                dispatch(connection, handler);
+            }
+        }
+    }
+
+    /**
+     * Runs a small request of a cheap read-only command right on this thread.
+     * Only done while no other request of the connection is in flight, so that responses keep the order of requests.
+     *
+     * @param connection The connection the request was received on.
+     * @param frame      The payload of the frame.
+     * @param handler    The handler of the request.
+     * @return true if the request has been answered.
+     */
+    private boolean runInline(Connection connection, byte[] frame, Handler handler) {
+        return frame.length <= INLINE_MAX_REQUEST_SIZE && connection.getInFlight().get() == 0 && handler.runInline();
+    }
+
+    /**
+     * Hands a request over to the lane of its connection if the in-flight limits allow it,
+     * and answers it with a "server busy" response otherwise.
+     *
+     * @param connection The connection the request was received on.
+     * @param handler    The handler of the request.
+     */
+    private void dispatch(Connection connection, Handler handler) {
+        if (!admissionControl.tryAcquire(connection)) {
+            handler.rejectBusy(settings.getRetryAfterMillis());
+            return;
+        }
+        try {
+            connection.getLane().execute(() -> {
+                try {
+                    handler.run();
+                } finally {
+                    admissionControl.release(connection);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            admissionControl.release(connection);
+            handler.rejectBusy(settings.getRetryAfterMillis());
+        }
+    }
+
+    /**
+     * Runs a helper of a parallel batch received on a connection on the request executor. Every helper counts
+     * against the in-flight limits as a request of its own, so a batch cannot fan out past them.
+     *
+     * @param connection The connection the batch was received on.
+     * @param task       The helper executing requests of the batch.
+     * @throws RejectedExecutionException if the limits are reached or the executor is full;
+     *                                    the batch then executes the requests itself.
+     */
+    private void runBatched(Connection connection, Runnable task) {
+        if (!admissionControl.tryAcquire(connection)) {
+            throw new RejectedExecutionException("In-flight limit reached");
+        }
+        try {
+            requestExecutor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    admissionControl.release(connection);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            admissionControl.release(connection);
+            throw e;
+        }
+    }
+
+    /**
+     * Switches a connection to the shared memory file named by the client, if the client runs on this host.
+     * The answer goes over the socket; everything after it goes through the rings of the file.
+     *
+     * @param connection The connection the request was received on.
+     * @param attach     The payload of the attach frame.
+     */
+    private void attachSharedMemory(Connection connection, byte[] attach) {
+        Path path = SharedMemoryHandshake.pathOf(attach);
+        SharedMemorySession session = null;
+        try {
+            SocketAddress remoteAddress = connection.getChannel().getRemoteAddress();
+            if (isLocal(remoteAddress)) {
+                session = new SharedMemorySession(connection, SharedMemoryFile.open(path), this);
+            } else {
+                logger.warn("Refusing shared memory to remote client {}", remoteAddress);
+            }
+        } catch (IOException e) {
+            logger.error("Error opening shared memory file {}: {}", path, e.getMessage());
+        }
+        if (session == null || !session.attach()) {
+            connection.enqueue(FrameEncoder.encode(SharedMemoryHandshake.attached(false)));
+            return;
+        }
+        // Compressing frames copied between two processes in memory only costs time
+        connection.replaceCompressor(null);
+        logger.info("Client switched to shared memory file {}", path);
+    }
+
+    /**
+     * Answers the hello frame of a client with the options of the connection and applies them:
+     * the features and compression chosen from what the client offered, and the largest frame it accepts.
+     * Shared memory is only offered to clients running on this host.
+     *
+     * @param connection The connection the hello was received on.
+     * @param frame      The payload of the hello frame.
+     */
+    private void negotiate(Connection connection, byte[] frame) {
+        Handshake.Hello hello;
+        int features = Handshake.SNAPSHOT_FRAMES | Handshake.HEARTBEATS;
+        try {
+            hello = Handshake.Hello.of(frame);
+            if (isLocal(connection.getChannel().getRemoteAddress())) {
+                features |= Handshake.SHARED_MEMORY;
+            }
+        } catch (IOException e) {
+            logger.error("Error reading hello: {}", e.getMessage());
+            return;
+        }
+        Handshake.Welcome welcome = Handshake.welcome(hello, features, Connection.MAX_FRAME_SIZE,
+                settings.getMaxInFlightPerConnection());
+        connection.setFeatures(welcome.features());
+        connection.setPeerMaxFrameSize(hello.maxFrameSize());
+        connection.replaceCompressor(welcome.compression() == Handshake.NO_COMPRESSION
+                ? null : Compression.create(welcome.compression()));
+        connection.enqueue(FrameEncoder.encode(welcome.toPayload()));
+        logger.debug("Handshake: protocol {}, features {}, codec {}, compression {}", welcome.version(),
+                welcome.features(), welcome.codec(), welcome.compression());
+    }
+
+    private static boolean isLocal(SocketAddress remoteAddress) {
+        return remoteAddress instanceof UnixDomainSocketAddress
+                || remoteAddress instanceof InetSocketAddress address && address.getAddress().isLoopbackAddress();
+    }
+
+    /**
+     * Records the compression algorithm offered by the client, if the server supports any of them.
+     *
+     * @param connection The connection the offer was received on.
+     * @param offer      The payload of the offer frame.
+     */
+    private void acceptCompression(Connection connection, byte[] offer) {
+        PayloadCompressor compressor = Compression.accept(offer);
+        if (compressor == null) {
+            logger.debug("None of the offered compression algorithms is supported");
+            return;
+        }
+        connection.replaceCompressor(compressor);
+        logger.debug("Compression {} negotiated", compressor.id());
+    }
 }
@@ -2,33 +2,91 @@ package ru.itmo.server.utility.network;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.itmo.server.utility.ServerSettings;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
 import java.nio.channels.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A TCP server that listens for incoming connections and handles them asynchronously.
+ * A boss selector only accepts connections and spreads them round-robin across worker reactors,
+ * each of which runs its own selector loop on a dedicated thread.
+ * Besides the TCP port, the server can listen on a Unix domain socket for clients running on the same host;
+ * connections accepted on both are served by the same reactors and request handlers.
+ * <p>
+ * The port is bound with {@code SO_REUSEPORT}, so a new server process can start listening on it while the old
+ * one is still running. The old one is then {@linkplain #shutdown stopped}: it stops accepting, finishes the
+ * requests in progress, sends their responses and closes every connection once it is quiet,
+ * and its clients reconnect to the new process.
  *
  * @author zevtos
  */
 public class TCPServer {
     private static final Logger logger = LoggerFactory.getLogger("TCPServer");
+    /**
+     * How long a shutdown waits, after its timeout, for the requests still in progress.
+     */
+    private static final long IN_PROGRESS_GRACE_MILLIS = 30000;
     private final int port;
-    private final ExecutorService threadPool;
+    private final Path unixSocketPath;
+    private final int workerCount;
+    private final RequestExecutor requestExecutor;
+    private final AdmissionControl admissionControl = new AdmissionControl(ServerSettings.getInstance());
+    private final CountDownLatch acceptorStopped = new CountDownLatch(1);
+    private Reactor[] workers;
+    private int nextWorker;
     private Selector selector;
-    private ServerSocketChannel serverSocketChannel;
+    private volatile boolean draining;
+    /**
+     * Identity of the socket file bound by this server, so that a file replaced by a newer server is not deleted.
+     */
+    private Object unixSocketFileKey;
 
     /**
-     * Constructs a TCP server with the specified port.
+     * Constructs a TCP server with the specified port, one worker reactor per available core
+     * and a pool of threads for request handlers sized by the server settings.
      *
      * @param port The port on which the server will listen for incoming connections.
      */
     public TCPServer(int port) {
+        this(port, Runtime.getRuntime().availableProcessors(),
+                new RequestExecutor(RequestExecutor.Mode.POOL, ServerSettings.getInstance().getPoolSize()));
+    }
+
+    /**
+     * Constructs a TCP server with the specified port, number of worker reactors and request executor.
+     *
+     * @param port            The port on which the server will listen for incoming connections.
+     * @param workerCount     The number of worker selectors serving the accepted connections.
+     * @param requestExecutor The executor running the request handlers.
+     */
+    public TCPServer(int port, int workerCount, RequestExecutor requestExecutor) {
+        this(port, null, workerCount, requestExecutor);
+    }
+
+    /**
+     * Constructs a server listening both on a TCP port and on a Unix domain socket.
+     *
+     * @param port            The port on which the server will listen for incoming connections.
+     * @param unixSocketPath  The path of the Unix domain socket to listen on, or null to listen on the port only.
+     * @param workerCount     The number of worker selectors serving the accepted connections.
+     * @param requestExecutor The executor running the request handlers.
+     */
+    public TCPServer(int port, Path unixSocketPath, int workerCount, RequestExecutor requestExecutor) {
         this.port = port;
-        this.threadPool = Executors.newFixedThreadPool(10);
+        this.unixSocketPath = unixSocketPath;
+        this.workerCount = Math.max(1, workerCount);
+        this.requestExecutor = requestExecutor;
     }
 
     /**
@@ -36,21 +94,75 @@ public class TCPServer {
      */
     public void start() {
         initServerSocketChannel();
+        startWorkers();
 
         // Main server loop
-        while (!Thread.currentThread().isInterrupted()) {
-            select();  // Blocks until events occur or until the reading thread wakes up to add an interesting key
+        while (!draining && !Thread.currentThread().isInterrupted()) {
+            select();  // Blocks until a new connection is pending
             for (SelectionKey key : selector.selectedKeys()) {
                 if (key.isAcceptable()) {
-                    handleAccept();
-                } else if (key.isReadable()) {
-                    // Read events are handled asynchronously by submitting tasks to the thread pool
-                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
-                    threadPool.submit(new TCPReader(key));
+                    handleAccept((ServerSocketChannel) key.channel());
                 }
             }
             selector.selectedKeys().clear(); // Clears processed keys
         }
+        stopAccepting();
+    }
+
+    /**
+     * Stops the server gracefully: stops accepting connections and reading requests, lets the reactors finish
+     * the requests already admitted and send their responses, and closes every connection once it is quiet.
+     * A request is never cut off while it is executed, so the same request sent again to the next server cannot be
+     * applied twice. After the timeout, responses clients have not read are dropped, and the requests still
+     * in progress, bounded by their deadlines, are waited for up to {@link #IN_PROGRESS_GRACE_MILLIS} more.
+     *
+     * @param timeoutMillis the maximum time to wait for the responses to be sent
+     */
+    public void shutdown(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        draining = true;
+        if (selector == null || workers == null) return;
+        selector.wakeup();
+        logger.info("Shutting down: no new connections are accepted, open ones are drained");
+        try {
+            // Новые соединения не должны попасть к уже остановленным реакторам
+            acceptorStopped.await(timeoutMillis, TimeUnit.MILLISECONDS);
+            for (Reactor worker : workers) {
+                worker.drain(deadline);
+            }
+            boolean drained = true;
+            for (Reactor worker : workers) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                // After the deadline the reactors still wait for the requests in progress
+                drained &= worker.awaitDrained(Math.max(remaining, 0) + IN_PROGRESS_GRACE_MILLIS);
+            }
+            logger.info(drained ? "All connections drained" : "Server stopped with connections still open");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Closes the listening channels. Connections already waiting in the backlog are accepted first,
+     * since closing a listener resets them; they are drained like the others.
+     */
+    private void stopAccepting() {
+        try {
+            for (SelectionKey key : selector.keys()) {
+                if (key.channel() instanceof ServerSocketChannel listener) {
+                    while (handleAccept(listener)) {
+                        // Accept the whole backlog
+                    }
+                    listener.close();
+                }
+            }
+            selector.close();
+            deleteUnixSocketFile();
+        } catch (IOException e) {
+            logger.error("Error closing server socket: {}", e.getMessage());
+        } finally {
+            acceptorStopped.countDown();
+        }
     }
 
     /**
@@ -70,11 +182,19 @@ public class TCPServer {
     private void initServerSocketChannel() {
         try {
             selector = Selector.open();
-            serverSocketChannel = ServerSocketChannel.open();
+            ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
             serverSocketChannel.configureBlocking(false);
+            serverSocketChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            if (serverSocketChannel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+                // Позволяет новому процессу сервера занять порт, пока старый завершает работу
+                serverSocketChannel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
             serverSocketChannel.socket().bind(new InetSocketAddress(port));
             serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
             logger.info("Server started on port {}", port);
+            if (unixSocketPath != null) {
+                initUnixSocketChannel();
+            }
         } catch (ClosedChannelException e) {
             logger.error("channel closed: {}", e.getMessage());
         } catch (IOException e) {
@@ -82,20 +202,71 @@ public class TCPServer {
         }
     }
 
+    /**
+     * Opens the Unix domain socket and registers it with the selector.
+     * A socket file left over by a previous run, or still used by a server being replaced, is removed first:
+     * new clients then reach this server, while the old one keeps serving the connections it already has.
+     */
+    private void initUnixSocketChannel() throws IOException {
+        Files.deleteIfExists(unixSocketPath);
+        ServerSocketChannel unixSocketChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        unixSocketChannel.configureBlocking(false);
+        unixSocketChannel.bind(UnixDomainSocketAddress.of(unixSocketPath));
+        unixSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+        unixSocketFileKey = Files.readAttributes(unixSocketPath, BasicFileAttributes.class).fileKey();
+        logger.info("Server listening on Unix domain socket {}", unixSocketPath);
+    }
+
+    /**
+     * Removes the socket file, unless a newer server has already replaced it with its own.
+     */
+    private void deleteUnixSocketFile() throws IOException {
+        if (unixSocketPath == null || unixSocketFileKey == null || !Files.exists(unixSocketPath)) return;
+        Object fileKey = Files.readAttributes(unixSocketPath, BasicFileAttributes.class).fileKey();
+        if (Objects.equals(fileKey, unixSocketFileKey)) {
+            Files.deleteIfExists(unixSocketPath);
+        }
+    }
+
+    /**
+     * Opens the worker reactors and starts a thread for each of them
+     */
+    private void startWorkers() {
+        workers = new Reactor[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            try {
+                workers[i] = new Reactor(requestExecutor, admissionControl);
+            } catch (IOException e) {
+                logger.error("Error opening worker selector: {}", e.getMessage());
+                throw new IllegalStateException(e);
+            }
+            Thread thread = new Thread(workers[i], "reactor-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        logger.info("Started {} worker reactors", workerCount);
+    }
+
     /**
      * Handles an incoming connection request
+     *
+     * @param serverSocketChannel The listening channel the connection is pending on.
+     * @return true if a connection was accepted
      */
-    private void handleAccept() {
+    private boolean handleAccept(ServerSocketChannel serverSocketChannel) {
         try {
             SocketChannel client = serverSocketChannel.accept();
             if (client != null) {
-                // Configure the client channel as non-blocking and register it with the selector for read events
+                // Configure the client channel as non-blocking and hand it to the next worker reactor
                 client.configureBlocking(false);
-                client.register(selector, SelectionKey.OP_READ);
+                workers[nextWorker].register(client);
+                nextWorker = (nextWorker + 1) % workers.length;
                 logger.info("New connection: {}", client.getRemoteAddress());
+                return true;
             }
         } catch (IOException e) {
             logger.error("Error accepting connection: {}", e.getMessage());
         }
+        return false;
     }
 }
@@ -2,13 +2,16 @@ package ru.itmo.server.utility.network;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ru.itmo.general.network.FrameDecoder;
 import ru.itmo.general.network.Response;
+import ru.itmo.general.network.SnapshotFrame;
+import ru.itmo.general.network.codec.Codec;
+import ru.itmo.general.network.codec.Compression;
+import ru.itmo.general.network.codec.PayloadCompressor;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.nio.ByteBuffer;
-import java.nio.channels.SocketChannel;
+import java.nio.channels.FileChannel;
 
 /**
  * Utility class for sending responses to clients over TCP connections.
@@ -19,36 +22,100 @@ public class TCPWriter {
     private static final Logger logger = LoggerFactory.getLogger("TCPWriter");
 
     /**
-     * Sends a response object to the client through the given socket channel.
+     * Payload size from which responses are compressed on connections that negotiated compression.
+     */
+    static final int COMPRESSION_THRESHOLD = Integer.getInteger("server.compression.threshold", 8 * 1024);
+
+    /**
+     * Sends a response object to the client as a single length-prefixed frame.
+     * The response is encoded into a pooled buffer, which goes through the outbound queue of the connection,
+     * so this method never blocks on a slow client. The buffer is returned to the pool once it has been written.
+     * Responses of at least {@link #COMPRESSION_THRESHOLD} bytes are compressed if the client negotiated compression.
+     * A response larger than the frames the client accepts is replaced with an error response.
      *
-     * @param clientSocketChannel The socket channel connected to the client.
-     * @param response            The response object to be sent.
+     * @param connection The connection to the client.
+     * @param response   The response object to be sent.
+     * @param codec      The wire format of the response, the same as the one of the request it answers.
      */
-    public static void sendResponse(SocketChannel clientSocketChannel, Response response) {
+    public static void sendResponse(Connection connection, Response response, Codec codec) {
+        FrameOutputStream frameOutputStream = new FrameOutputStream(BufferPool.getInstance());
         try {
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream)) {
-                logger.debug("Sending response to client {}", clientSocketChannel.getRemoteAddress());
-                objectOutputStream.writeObject(response);
-                objectOutputStream.flush();
-            } catch (IOException e) {
-                logger.error("Error serializing response: {}", e.getMessage());
-                throw e;
+            logger.debug("Sending response to client {}", connection.getChannel().getRemoteAddress());
+            codec.encode(response, frameOutputStream);
+            ByteBuffer frame = frameOutputStream.toFrame();
+            PayloadCompressor compressor = connection.getCompressor();
+            if (compressor != null && frame.remaining() - FrameDecoder.HEADER_SIZE >= COMPRESSION_THRESHOLD) {
+                frame = compress(frame, compressor);
             }
-
-            byte[] responseBytes = byteArrayOutputStream.toByteArray();
-            ByteBuffer buffer = ByteBuffer.wrap(responseBytes);
-            // Write the response bytes to the channel
-            while (buffer.hasRemaining()) {
-                try {
-                    clientSocketChannel.write(buffer);
-                } catch (IOException e) {
-                    logger.error("Error sending data to client: {}", e.getMessage());
-                    throw e;
-                }
+            if (frame.remaining() - FrameDecoder.HEADER_SIZE > connection.getPeerMaxFrameSize()) {
+                logger.warn("Response of {} bytes exceeds the frame limit of the client", frame.remaining());
+                BufferPool.getInstance().release(frame);
+                Response tooLarge = new Response(false, Response.RESPONSE_TOO_LARGE);
+                tooLarge.setRequestId(response.getRequestId());
+                sendResponse(connection, tooLarge, codec);
+                return;
             }
+            connection.enqueue(frame);
         } catch (IOException e) {
+            frameOutputStream.discard();
             logger.error("Error sending response: {}", e.getMessage());
         }
     }
+
+    /**
+     * Sends a response encoded in advance into a file, as a {@link SnapshotFrame} answering the given request.
+     * The file is copied into the socket by the kernel, through the outbound queue of the connection.
+     *
+     * @param connection The connection to the client.
+     * @param requestId  The identifier of the request being answered.
+     * @param response   The file holding the encoded response; it is closed once it has been sent.
+     * @return true if the snapshot has been queued, false if it is larger than the frames the client accepts.
+     * @throws IOException If the size of the file cannot be read.
+     */
+    static boolean sendSnapshot(Connection connection, long requestId, FileChannel response) throws IOException {
+        FileRegion body;
+        try {
+            body = new FileRegion(response);
+        } catch (IOException e) {
+            response.close();
+            throw e;
+        }
+        if (SnapshotFrame.HEADER_SIZE + body.remaining() > connection.getPeerMaxFrameSize()) {
+            response.close();
+            return false;
+        }
+        logger.debug("Sending snapshot of {} bytes to client {}",
+                body.remaining(), connection.getChannel().getRemoteAddress());
+        connection.enqueue(SnapshotFrame.header(requestId, body.remaining()), body);
+        return true;
+    }
+
+    /**
+     * Replaces a frame with a frame holding its compressed payload.
+     * The original frame is kept if compression fails or does not make it smaller.
+     *
+     * @param frame      The encoded frame, owned by the caller.
+     * @param compressor The compressor of the connection.
+     * @return The frame to send; the other one is returned to the pool.
+     */
+    private static ByteBuffer compress(ByteBuffer frame, PayloadCompressor compressor) {
+        BufferPool bufferPool = BufferPool.getInstance();
+        FrameOutputStream compressedOutputStream = new FrameOutputStream(bufferPool);
+        try {
+            frame.position(FrameDecoder.HEADER_SIZE);
+            Compression.compress(frame, compressor, compressedOutputStream);
+            ByteBuffer compressed = compressedOutputStream.toFrame();
+            frame.rewind();
+            if (compressed.remaining() < frame.remaining()) {
+                bufferPool.release(frame);
+                return compressed;
+            }
+            bufferPool.release(compressed);
+        } catch (IOException e) {
+            compressedOutputStream.discard();
+            frame.rewind();
+            logger.error("Error compressing response: {}", e.getMessage());
+        }
+        return frame;
+    }
 }
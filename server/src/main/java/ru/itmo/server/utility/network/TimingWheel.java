@@ -0,0 +1,140 @@
+package ru.itmo.server.utility.network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A hashed timing wheel: a cheap scheduler for large numbers of coarse-grained timeouts.
+ * Time is divided into ticks; a timeout is put into the bucket of the tick it expires at, modulo the wheel size,
+ * together with the number of full turns of the wheel still to wait. Scheduling and cancelling are O(1),
+ * and every tick only looks at one bucket. Tasks run on the single thread of the wheel and must be short.
+ *
+ * @author zevtos
+ */
+public class TimingWheel {
+    private static final Logger logger = LoggerFactory.getLogger("TimingWheel");
+    private final long tickMillis;
+    private final List<Timeout>[] buckets;
+    private final int mask;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final long startTime = System.nanoTime();
+    private long tick;
+
+    /**
+     * Creates a wheel and starts its thread.
+     *
+     * @param name       the name of the thread
+     * @param tickMillis the duration of a tick, which is the precision of the timeouts
+     * @param wheelSize  the number of buckets, rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(String name, long tickMillis, int wheelSize) {
+        this.tickMillis = tickMillis;
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.buckets = new List[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        this.mask = size - 1;
+        Thread worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Schedules a task.
+     *
+     * @param task  the task, run on the thread of the wheel
+     * @param delay the delay after which the task runs
+     * @param unit  the unit of the delay
+     * @return a handle which can be used to cancel the task
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long deadline = elapsedMillis() + Math.max(0, unit.toMillis(delay));
+        Timeout timeout = new Timeout(task, deadline);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    private long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            long sleep = (tick + 1) * tickMillis - elapsedMillis();
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            transferPending();
+            expire(buckets[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.cancelled) continue;
+            long expiryTick = Math.max(timeout.deadline / tickMillis, tick);
+            timeout.remainingRounds = (expiryTick - tick) / buckets.length;
+            buckets[(int) (expiryTick & mask)].add(timeout);
+        }
+    }
+
+    private void expire(List<Timeout> bucket) {
+        Iterator<Timeout> iterator = bucket.iterator();
+        List<Timeout> expired = new ArrayList<>();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if (timeout.cancelled) {
+                iterator.remove();
+            } else if (timeout.remainingRounds <= 0) {
+                iterator.remove();
+                expired.add(timeout);
+            } else {
+                timeout.remainingRounds--;
+            }
+        }
+        for (Timeout timeout : expired) {
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                logger.error("Error in scheduled task: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * A task scheduled on the wheel.
+     */
+    public static class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long remainingRounds;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Prevents the task from running if it has not run yet.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package ru.itmo.server.managers;
+
+import org.junit.Test;
+import ru.itmo.general.network.Request;
+import ru.itmo.general.network.Response;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link IdempotencyCache}.
+ */
+public class IdempotencyCacheTest {
+    private final AtomicInteger executions = new AtomicInteger();
+    private final Function<Request, Response> command =
+            request -> new Response(true, "added", executions.incrementAndGet());
+
+    private static Request request(int userId, String key) {
+        Request request = new Request("add", null);
+        request.setUserId(userId);
+        request.setIdempotencyKey(key);
+        return request;
+    }
+
+    @Test
+    public void replayGetsResponseOfFirstExecution() {
+        IdempotencyCache cache = new IdempotencyCache(100, 60000);
+
+        Response first = cache.execute(request(1, "k"), command);
+        Response replay = cache.execute(request(1, "k"), command);
+
+        assertEquals(1, executions.get());
+        assertEquals(first.getData(), replay.getData());
+        assertNotSame(first, replay);
+    }
+
+    @Test
+    public void keysAreScopedByUser() {
+        IdempotencyCache cache = new IdempotencyCache(100, 60000);
+
+        cache.execute(request(1, "k"), command);
+        Response other = cache.execute(request(2, "k"), command);
+
+        assertEquals(2, executions.get());
+        assertEquals(2, other.getData());
+    }
+
+    @Test
+    public void expiredKeyIsExecutedAgain() throws InterruptedException {
+        IdempotencyCache cache = new IdempotencyCache(100, 1);
+
+        cache.execute(request(1, "k"), command);
+        Thread.sleep(5);
+        cache.execute(request(1, "k"), command);
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    public void requestNotAppliedIsExecutedAgain() {
+        IdempotencyCache cache = new IdempotencyCache(100, 60000);
+
+        cache.execute(request(1, "k"), request -> new Response(false, Response.DEADLINE_EXCEEDED));
+        cache.execute(request(1, "k"), command);
+
+        assertEquals(1, executions.get());
+    }
+}
@@ -0,0 +1,38 @@
+package ru.itmo.server.managers;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link SessionManager}.
+ */
+public class SessionManagerTest {
+
+    @Test
+    public void reusesLiveSessionOfUser() {
+        SessionManager sessions = new SessionManager(60000);
+
+        String first = sessions.open(7, "alice");
+        String second = sessions.open(7, "alice");
+
+        assertEquals(first, second);
+        assertEquals(1, sessions.size());
+        assertNotEquals(first, sessions.open(8, "bob"));
+    }
+
+    @Test
+    public void opensNewSessionOnceClosedOrExpired() throws InterruptedException {
+        SessionManager sessions = new SessionManager(60000);
+        String closed = sessions.open(7, "alice");
+        sessions.close(closed);
+        assertNotEquals(closed, sessions.open(7, "alice"));
+
+        SessionManager shortLived = new SessionManager(1);
+        String expired = shortLived.open(7, "alice");
+        Thread.sleep(5);
+        String reopened = shortLived.open(7, "alice");
+        assertNotEquals(expired, reopened);
+        assertNull(shortLived.validate(expired));
+    }
+}
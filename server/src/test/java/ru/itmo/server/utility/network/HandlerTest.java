@@ -0,0 +1,61 @@
+package ru.itmo.server.utility.network;
+
+import org.junit.Test;
+import ru.itmo.general.models.User;
+import ru.itmo.general.network.Request;
+import ru.itmo.general.network.Response;
+
+import java.time.LocalDateTime;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the authentication of requests in {@link Handler}.
+ */
+public class HandlerTest {
+    private static final User ALICE = new User(7, "alice", "hash", "salt", LocalDateTime.now());
+
+    private static Request login(String username, String password, Integer forgedUserId) {
+        Request request = new Request(true, "login", null);
+        request.setLogin(username);
+        request.setPassword(password);
+        request.setUserId(forgedUserId);
+        return request;
+    }
+
+    @Test
+    public void forgedUserIdWithWrongPasswordGetsNoToken() {
+        Request request = login("alice", "wrong-password", 42);
+
+        Response response = Handler.authenticate(request, ALICE, false, r -> {
+            fail("login with a wrong password must not be executed");
+            return null;
+        });
+
+        assertNull(response);
+        assertNull(request.getUserId());
+    }
+
+    @Test
+    public void forgedUserIdOfUnknownUserGetsNoToken() {
+        Request request = login("mallory", "any-password", 42);
+
+        Response response = Handler.authenticate(request, null, false, r -> {
+            assertNull(r.getUserId());
+            return new Response(false, "Invalid username or password", null);
+        });
+
+        assertFalse(response.isSuccess());
+        assertNull(response.getToken());
+    }
+
+    @Test
+    public void verifiedUserGetsTokenForOwnId() {
+        Request request = login("alice", "right-password", 42);
+
+        Response response = Handler.authenticate(request, ALICE, true, r -> new Response(true, "ok", 7));
+
+        assertEquals(Integer.valueOf(7), request.getUserId());
+        assertNotNull(response.getToken());
+    }
+}